@@ -0,0 +1,89 @@
+package payroll;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end EmployeeController calls over HTTP against the embedded Tomcat and in-memory H2 database,
+ * with {@code rows} employees in the table (see EmployeeDataGenerator). Every trial boots its own application context
+ * and database.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmployeeApiBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int rows;
+
+    private ServletWebServerApplicationContext context;
+    private HttpClient client;
+    private String baseUri;
+    private long firstId;
+
+    @Setup
+    public void setUp() {
+        context = (ServletWebServerApplicationContext) new SpringApplicationBuilder(PayrollApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN",
+                        "spring.datasource.url=jdbc:h2:mem:benchmark-" + rows)
+                // one client hammering the API is exactly what LoadSheddingFilter would stop; an argument, as a default
+                // property application.properties would switch it on again
+                .run("--payroll.limits.enabled=false", "--payroll.seed.generate=" + rows);
+        firstId = context.getBean(EmployeeDataGenerator.class).getFirstId();
+        client = HttpClient.newHttpClient();
+        baseUri = "http://localhost:" + context.getWebServer().getPort() + "/employees";
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    private String get(String uri) throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(uri)).build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(uri + " answered " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    private long randomId() {
+        return firstId + ThreadLocalRandom.current().nextInt(rows);
+    }
+
+    @Benchmark
+    public String one() throws Exception {
+        return get(baseUri + "/" + randomId());
+    }
+
+    @Benchmark
+    public String keysetPage() throws Exception {
+        return get(baseUri + "?size=100&after=" + randomId());
+    }
+
+    @Benchmark
+    public String all() throws Exception {
+        return get(baseUri);
+    }
+}
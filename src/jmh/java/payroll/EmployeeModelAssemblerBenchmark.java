@@ -0,0 +1,92 @@
+package payroll;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
+
+/**
+ * Link building cost of one response with {@code employees} rows: two linkTo(...) calls per employee, EmployeeModelAssembler.toModel per employee, and one linkTemplates() per response.
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmployeeModelAssemblerBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int employees;
+
+    private static final Method ONE = ReflectionUtils.findMethod(EmployeeController.class, "one", Long.class);
+    private static final Method ALL = ReflectionUtils.findMethod(EmployeeController.class, "all");
+
+    private final EmployeeModelAssembler assembler = new EmployeeModelAssembler();
+    private List<Employee> roster;
+
+    @Setup
+    public void setUp() {
+        // the link builders resolve host and context path from the current request, a thread-bound one is enough
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/employees");
+        request.setServerName("payroll.example.com");
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        roster = new ArrayList<>(employees);
+        for (int i = 0; i < employees; i++) {
+            Employee employee = new Employee("First" + i, "Last" + i, "role" + (i % 10));
+            employee.setId((long) i + 1);
+            roster.add(employee);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Benchmark
+    public void linkBuilderPerEmployee(Blackhole blackhole) {
+        for (Employee employee : roster) {
+            blackhole.consume(EntityModel.of(employee,
+                    linkTo(EmployeeController.class, ONE, employee.getId()).withSelfRel(),
+                    linkTo(EmployeeController.class, ALL).withRel("employees")));
+        }
+    }
+
+    @Benchmark
+    public void assemblerToModel(Blackhole blackhole) {
+        for (Employee employee : roster) {
+            blackhole.consume(assembler.toModel(employee));
+        }
+    }
+
+    @Benchmark
+    public void linkTemplatesPerResponse(Blackhole blackhole) {
+        EmployeeModelAssembler.LinkTemplates links = assembler.linkTemplates();
+        for (Employee employee : roster) {
+            blackhole.consume(links.toModel(employee));
+        }
+    }
+}
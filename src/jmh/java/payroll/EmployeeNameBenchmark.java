@@ -0,0 +1,70 @@
+package payroll;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * String handling of the legacy name property: setName parses it on every PUT, getName composes it for every
+ * serialized employee (and toString/hashCode run on it too). Run with -prof gc to see the allocation rate.
+ **/
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmployeeNameBenchmark {
+    private Employee employee;
+    private String name;
+    private String otherName;
+    private boolean other;
+
+    @Setup
+    public void setUp() {
+        employee = new Employee("Bilbo", "Baggins", "burglar");
+        employee.setId(1L);
+        // not a literal, so the parse can't be folded by the JIT
+        name = new StringBuilder("Frodo").append(' ').append("Baggins").toString();
+        otherName = new StringBuilder("Ludwig").append(' ').append("van Beethoven").toString();
+    }
+
+    @Benchmark
+    public String getName() {
+        return employee.getName();
+    }
+
+    @Benchmark
+    public Employee setName() {
+        employee.setName(name);
+        return employee;
+    }
+
+    // every call changes the name, so both parts are really parsed and the name composed again
+    @Benchmark
+    public String setChangedThenGetName() {
+        other = !other;
+        employee.setName(other ? otherName : name);
+        return employee.getName();
+    }
+
+    @Benchmark
+    public String setThenGetName() {
+        employee.setName(name);
+        return employee.getName();
+    }
+
+    @Benchmark
+    public int employeeHashCode() {
+        return employee.hashCode();
+    }
+}
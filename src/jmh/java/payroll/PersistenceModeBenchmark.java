@@ -0,0 +1,114 @@
+package payroll;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of reads and writes over HTTP with the default in-memory database against the durable profile (H2 file
+ * database, fixed size pool, statement and plan caches, async workers), both with {@code rows} generated employees.
+ * The durable database lives in a temporary directory that is removed after the trial.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(8)
+@Fork(1)
+public class PersistenceModeBenchmark {
+    @Param({"memory", "durable"})
+    public String database;
+
+    @Param({"100000"})
+    public int rows;
+
+    private ServletWebServerApplicationContext context;
+    private Path data;
+    private HttpClient client;
+    private String baseUri;
+    private long firstId;
+
+    @Setup
+    public void setUp() throws IOException {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(PayrollApplication.class)
+                .properties("server.port=0", "logging.level.root=WARN");
+        // arguments, not default properties: the profile's and application.properties' values would win over those
+        List<String> args = new ArrayList<>(List.of("--payroll.limits.enabled=false", "--payroll.seed.generate=" + rows));
+        if (database.equals("durable")) {
+            data = Files.createTempDirectory("payroll-benchmark");
+            builder.profiles("durable");
+            args.add("--payroll.data.dir=" + data);
+        } else {
+            builder.properties("spring.datasource.url=jdbc:h2:mem:persistence-benchmark");
+        }
+        context = (ServletWebServerApplicationContext) builder.run(args.toArray(new String[0]));
+        firstId = context.getBean(EmployeeDataGenerator.class).getFirstId();
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        baseUri = "http://localhost:" + context.getWebServer().getPort() + "/employees";
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        context.close();
+        if (data != null) {
+            FileSystemUtils.deleteRecursively(data);
+        }
+    }
+
+    private String send(HttpRequest request) throws Exception {
+        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() >= 300) {
+            throw new IllegalStateException(request.uri() + " answered " + response.statusCode());
+        }
+        return response.body();
+    }
+
+    private long randomId() {
+        return firstId + ThreadLocalRandom.current().nextInt(rows);
+    }
+
+    @Benchmark
+    public String one() throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(baseUri + "/" + randomId())).build());
+    }
+
+    @Benchmark
+    public String keysetPage() throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(baseUri + "?size=100&after=" + randomId())).build());
+    }
+
+    @Benchmark
+    public String put() throws Exception {
+        String role = EmployeeDataGenerator.ROLES[ThreadLocalRandom.current().nextInt(EmployeeDataGenerator.ROLES.length)];
+        return send(HttpRequest.newBuilder(URI.create(baseUri + "/" + randomId()))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"name\":\"Bilbo Baggins\",\"role\":\"" + role + "\"}"))
+                .build());
+    }
+}
@@ -0,0 +1,293 @@
+package payroll;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load test of the employee REST API: every virtual user sends its next request as soon as the previous
+ * one is answered, the operation picked at random by the weights of the mix. Prints requests, errors (everything
+ * but 2xx), throughput and latency percentiles per operation for the measured period.
+ * <p>
+ * Without --url the payroll application is started in this JVM first, with --rows generated employees (see
+ * EmployeeDataGenerator) and the LoadSheddingFilter off; arguments that aren't options of the load test are passed
+ * on to it, e.g. --payroll.execution.async=true. Runs in the loadtest profile:
+ * <pre>
+ *     ./mvnw -Ploadtest -DskipTests verify -Dloadtest.args="--rows=1000000 --concurrency=64 --duration=60"
+ * </pre>
+ * Options (--name=value):
+ * <ul>
+ * <li>url: base URL of a running payroll service, e.g. http://localhost:8080</li>
+ * <li>rows: employees to generate into the application started here, default 100000</li>
+ * <li>concurrency: virtual users, default 32</li>
+ * <li>warmup: seconds of load before measuring, default 10</li>
+ * <li>duration: measured seconds, default 30</li>
+ * <li>mix: weights of the operations below, default one:50,page:30,search:10,put:5,role:5</li>
+ * </ul>
+ **/
+public class LoadTest {
+
+    enum Operation {
+        // GET /employees/{id}
+        ONE,
+        // GET /employees?after={id}&size=20
+        PAGE,
+        // GET /employees?role={role}&size=20
+        SEARCH,
+        // PUT /employees/{id}
+        PUT,
+        // PUT /employees/{id}/role
+        ROLE,
+        // GET /employees/export, the whole table
+        EXPORT,
+        // GET /employees/aggregates
+        AGGREGATES
+    }
+
+    private static final String[] OPTIONS = {"url", "rows", "concurrency", "warmup", "duration", "mix"};
+
+    private final HttpClient client = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(10))
+            .build();
+    private final String baseUri;
+    private final Map<Operation, Integer> mix;
+    private final int totalWeight;
+    private final Map<Operation, Recorder> latencies = new EnumMap<>(Operation.class);
+    private final Map<Operation, LongAdder> errors = new EnumMap<>(Operation.class);
+    // the first failure of each operation (status code or exception), printed with the report
+    private final Map<Operation, AtomicReference<String>> firstError = new EnumMap<>(Operation.class);
+    private long firstId;
+    private long lastId;
+    private volatile boolean running = true;
+
+    LoadTest(String baseUri, Map<Operation, Integer> mix) {
+        this.baseUri = baseUri;
+        this.mix = mix;
+        this.totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        for (Operation operation : mix.keySet()) {
+            // nanoseconds, three significant digits
+            latencies.put(operation, new Recorder(3));
+            errors.put(operation, new LongAdder());
+            firstError.put(operation, new AtomicReference<>());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        List<String> applicationArgs = new ArrayList<>();
+        for (String arg : args) {
+            String option = option(arg);
+            if (option != null) {
+                options.put(option, arg.substring(option.length() + 3));
+            } else {
+                applicationArgs.add(arg);
+            }
+        }
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "10"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        Map<Operation, Integer> mix = parseMix(options.getOrDefault("mix", "one:50,page:30,search:10,put:5,role:5"));
+
+        ServletWebServerApplicationContext context = null;
+        String url = options.get("url");
+        if (url == null) {
+            // command line arguments, default properties would lose against application.properties
+            Map<String, String> defaults = new LinkedHashMap<>();
+            defaults.put("server.port", "0");
+            defaults.put("logging.level.root", "WARN");
+            defaults.put("payroll.limits.enabled", "false");
+            defaults.put("payroll.seed.generate", options.getOrDefault("rows", "100000"));
+            defaults.forEach((name, value) -> {
+                if (applicationArgs.stream().noneMatch(arg -> arg.startsWith("--" + name + "="))) {
+                    applicationArgs.add("--" + name + "=" + value);
+                }
+            });
+            context = (ServletWebServerApplicationContext) new SpringApplicationBuilder(PayrollApplication.class)
+                    .run(applicationArgs.toArray(new String[0]));
+            url = "http://localhost:" + context.getWebServer().getPort();
+        }
+        try {
+            new LoadTest(url + "/employees", mix).run(concurrency, warmup, duration);
+        } finally {
+            if (context != null) {
+                context.close();
+            }
+        }
+    }
+
+    private static String option(String arg) {
+        for (String option : OPTIONS) {
+            if (arg.startsWith("--" + option + "=")) {
+                return option;
+            }
+        }
+        return null;
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] weight = entry.trim().split(":");
+            int value = Integer.parseInt(weight[1].trim());
+            if (value > 0) {
+                weights.put(Operation.valueOf(weight[0].trim().toUpperCase()), value);
+            }
+        }
+        if (weights.isEmpty()) {
+            throw new IllegalArgumentException("The mix has no operation with a weight: " + mix);
+        }
+        return weights;
+    }
+
+    void run(int concurrency, int warmupSeconds, int durationSeconds) throws Exception {
+        // the ids of the first and the last employee bound the random ids
+        firstId = get(baseUri + "?size=1").at("/_embedded/employeeList/0/id").asLong();
+        lastId = get(baseUri + "?size=1&before=" + Long.MAX_VALUE).at("/_embedded/employeeList/0/id").asLong();
+        System.out.printf("%s: employees %d to %d, %d virtual users, %d s warmup, %d s measured, mix %s%n",
+                baseUri, firstId, lastId, concurrency, warmupSeconds, durationSeconds, mix);
+
+        List<Thread> users = new ArrayList<>(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            Thread user = new Thread(this::user, "load-test-" + i);
+            user.setDaemon(true);
+            user.start();
+            users.add(user);
+        }
+        TimeUnit.SECONDS.sleep(warmupSeconds);
+        // drop what the warmup recorded
+        latencies.values().forEach(Recorder::reset);
+        errors.values().forEach(LongAdder::reset);
+        long start = System.nanoTime();
+        TimeUnit.SECONDS.sleep(durationSeconds);
+        Map<Operation, Histogram> measured = new EnumMap<>(Operation.class);
+        latencies.forEach((operation, recorder) -> measured.put(operation, recorder.getIntervalHistogram()));
+        Map<Operation, Long> failed = new EnumMap<>(Operation.class);
+        errors.forEach((operation, count) -> failed.put(operation, count.sum()));
+        double seconds = (System.nanoTime() - start) / 1e9;
+        running = false;
+        for (Thread user : users) {
+            user.join(TimeUnit.SECONDS.toMillis(30));
+        }
+        report(measured, failed, seconds);
+        firstError.values().stream().map(AtomicReference::get).filter(Objects::nonNull)
+                .forEach(error -> System.out.println("first error: " + error));
+    }
+
+    private void user() {
+        while (running) {
+            Operation operation = next();
+            HttpRequest request = request(operation);
+            long start = System.nanoTime();
+            String error;
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                error = response.statusCode() / 100 == 2 ? null : request.method() + " " + request.uri() + " answered " + response.statusCode();
+            } catch (Exception ex) {
+                error = request.method() + " " + request.uri() + " failed: " + ex;
+            }
+            latencies.get(operation).recordValue(System.nanoTime() - start);
+            if (error != null) {
+                errors.get(operation).increment();
+                firstError.get(operation).compareAndSet(null, error);
+            }
+        }
+    }
+
+    private Operation next() {
+        int pick = ThreadLocalRandom.current().nextInt(totalWeight);
+        for (Map.Entry<Operation, Integer> weight : mix.entrySet()) {
+            pick -= weight.getValue();
+            if (pick < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private HttpRequest request(Operation operation) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long id = random.nextLong(firstId, lastId + 1);
+        String role = EmployeeDataGenerator.ROLES[random.nextInt(EmployeeDataGenerator.ROLES.length)];
+        switch (operation) {
+            case ONE:
+                return HttpRequest.newBuilder(URI.create(baseUri + "/" + id)).build();
+            case PAGE:
+                return HttpRequest.newBuilder(URI.create(baseUri + "?size=20&after=" + id)).build();
+            case SEARCH:
+                return HttpRequest.newBuilder(URI.create(baseUri + "?size=20&role=" + role)).build();
+            case PUT:
+                String name = EmployeeDataGenerator.FIRST_NAMES[random.nextInt(EmployeeDataGenerator.FIRST_NAMES.length)]
+                        + " " + EmployeeDataGenerator.LAST_NAMES[random.nextInt(EmployeeDataGenerator.LAST_NAMES.length)];
+                return json(baseUri + "/" + id, "{\"name\":\"" + name + "\",\"role\":\"" + role + "\"}");
+            case ROLE:
+                return json(baseUri + "/" + id + "/role", "{\"role\":\"" + role + "\"}");
+            case EXPORT:
+                return HttpRequest.newBuilder(URI.create(baseUri + "/export")).build();
+            case AGGREGATES:
+                return HttpRequest.newBuilder(URI.create(baseUri + "/aggregates")).build();
+            default:
+                throw new IllegalArgumentException(operation.name());
+        }
+    }
+
+    private static HttpRequest json(String uri, String body) {
+        return HttpRequest.newBuilder(URI.create(uri))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private JsonNode get(String uri) throws Exception {
+        HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(uri)).build(), HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException(uri + " answered " + response.statusCode());
+        }
+        return new ObjectMapper().readTree(response.body());
+    }
+
+    private static void report(Map<Operation, Histogram> measured, Map<Operation, Long> failed, double seconds) {
+        System.out.printf("%n%-8s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        Histogram total = new Histogram(3);
+        long totalErrors = 0;
+        for (Map.Entry<Operation, Histogram> entry : measured.entrySet()) {
+            long errors = failed.get(entry.getKey());
+            line(entry.getKey().name().toLowerCase(), entry.getValue(), errors, seconds);
+            total.add(entry.getValue());
+            totalErrors += errors;
+        }
+        line("total", total, totalErrors, seconds);
+    }
+
+    private static void line(String name, Histogram histogram, long failed, double seconds) {
+        System.out.printf("%-8s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name, histogram.getTotalCount(), failed, histogram.getTotalCount() / seconds,
+                millis(histogram.getValueAtPercentile(50)), millis(histogram.getValueAtPercentile(90)),
+                millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
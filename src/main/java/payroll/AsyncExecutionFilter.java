@@ -0,0 +1,108 @@
+package payroll;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.DispatcherType;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * With payroll.execution.async=true, hands employee requests to the EmployeeRequestExecutor: the request is put into
+ * servlet async mode, the Tomcat thread goes back to the connector and a worker runs the DispatcherServlet (and so
+ * the unchanged EmployeeController handler) while JPA is busy. When the workers and their queue are full the
+ * request is answered right here with a 503 and a Retry-After.
+ * <p>
+ * The worker calls the DispatcherServlet itself rather than the rest of the filter chain, Tomcat recycles the chain
+ * as soon as its thread returns. Filters ahead of this one see the request again in the async dispatch back to the
+ * container once the worker is done, which is where WebMvcMetricsFilter records http.server.requests.
+ * <p>
+ * The export and the change stream are left alone: they are streamed from threads of their own already.
+ **/
+@Order(Ordered.LOWEST_PRECEDENCE)
+class AsyncExecutionFilter extends OncePerRequestFilter {
+    private static final Logger log = LoggerFactory.getLogger(AsyncExecutionFilter.class);
+
+    private static final String HANDED_OFF = AsyncExecutionFilter.class.getName() + ".HANDED_OFF";
+
+    private final EmployeeRequestExecutor executor;
+    private final DispatcherServlet dispatcherServlet;
+
+    AsyncExecutionFilter(EmployeeRequestExecutor executor, DispatcherServlet dispatcherServlet) {
+        this.executor = executor;
+        this.dispatcherServlet = dispatcherServlet;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return !path.startsWith("/employees") || path.equals("/employees/export") || path.equals("/employees/events");
+    }
+
+    // the dispatch back from the worker has to be seen, and ended, here
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        // not isAsyncDispatch(), that one only knows about Spring MVC's own async processing
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            if (request.getAttribute(HANDED_OFF) == null) {
+                chain.doFilter(request, response);
+            }
+            // the worker has written the response already
+            return;
+        }
+        if (!request.isAsyncSupported()) {
+            chain.doFilter(request, response);
+            return;
+        }
+        AsyncContext async = request.startAsync(request, response);
+        // bounded by the queue, not by a timer racing the worker
+        async.setTimeout(0);
+        request.setAttribute(HANDED_OFF, Boolean.TRUE);
+        // OncePerRequestFilter keeps its marker while async processing is started and would send the dispatch back
+        // straight down the chain, into the DispatcherServlet a second time
+        request.removeAttribute(getAlreadyFilteredAttributeName());
+        try {
+            executor.execute(() -> {
+                try {
+                    dispatcherServlet.service(request, response);
+                } catch (Exception ex) {
+                    log.error("Employee request " + request.getRequestURI() + " failed", ex);
+                    if (!response.isCommitted()) {
+                        try {
+                            response.sendError(HttpStatus.INTERNAL_SERVER_ERROR.value());
+                        } catch (IOException ignored) {
+                            // the client is gone
+                        }
+                    }
+                } finally {
+                    async.dispatch();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.getWriter().write("Too many concurrent requests, retry later");
+            // through the dispatch as well, so the 503 is recorded like any other response
+            async.dispatch();
+        }
+    }
+}
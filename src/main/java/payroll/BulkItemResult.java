@@ -0,0 +1,60 @@
+package payroll;
+
+/**
+ * Outcome of one element of a POST /employees/bulk request, reported at the same index as the element in the request.
+ **/
+public class BulkItemResult {
+
+    public enum Status {
+        CREATED,
+        // the element had an id no employee has, it was created with a new one (like PUT or POST would)
+        CREATED_WITH_NEW_ID,
+        UPDATED,
+        // the element's chunk was rolled back, the id is the one sent (if any)
+        FAILED
+    }
+
+    private final int index;
+    private final Status status;
+    private final Long id;
+    private final String error;
+
+    private BulkItemResult(int index, Status status, Long id, String error) {
+        this.index = index;
+        this.status = status;
+        this.id = id;
+        this.error = error;
+    }
+
+    static BulkItemResult created(int index, Long id) {
+        return new BulkItemResult(index, Status.CREATED, id, null);
+    }
+
+    static BulkItemResult createdWithNewId(int index, Long id) {
+        return new BulkItemResult(index, Status.CREATED_WITH_NEW_ID, id, null);
+    }
+
+    static BulkItemResult updated(int index, Long id) {
+        return new BulkItemResult(index, Status.UPDATED, id, null);
+    }
+
+    static BulkItemResult failed(int index, Long id, String error) {
+        return new BulkItemResult(index, Status.FAILED, id, error);
+    }
+
+    public int getIndex() {
+        return this.index;
+    }
+
+    public Status getStatus() {
+        return this.status;
+    }
+
+    public Long getId() {
+        return this.id;
+    }
+
+    public String getError() {
+        return this.error;
+    }
+}
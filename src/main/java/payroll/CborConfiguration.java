@@ -0,0 +1,42 @@
+package payroll;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.AutowireCapableBeanFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.hateoas.mediatype.MessageResolver;
+import org.springframework.hateoas.mediatype.hal.CurieProvider;
+import org.springframework.hateoas.mediatype.hal.HalConfiguration;
+import org.springframework.hateoas.mediatype.hal.Jackson2HalModule;
+import org.springframework.hateoas.server.LinkRelationProvider;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Compact binary representation for service-to-service callers: with Accept: application/cbor every EmployeeController
+ * response (and with Content-Type: application/cbor every request body) is CBOR instead of JSON.
+ * <p>
+ * Spring MVC would register a CBOR converter on its own, but with a plain ObjectMapper that renders an
+ * EntityModel as {"links": [...]}. This one gets the HAL module, so the binary document has exactly the structure
+ * of the application/hal+json one (_embedded, _links), only with binary encoded strings and numbers and without the
+ * JSON punctuation. Declaring it as a bean replaces Spring MVC's default CBOR converter.
+ **/
+@Configuration(proxyBeanMethods = false)
+public class CborConfiguration {
+
+    @Bean
+    MappingJackson2CborHttpMessageConverter halCborHttpMessageConverter(Jackson2ObjectMapperBuilder builder, LinkRelationProvider relProvider,
+                                                                        ObjectProvider<CurieProvider> curieProvider,
+                                                                        ObjectProvider<HalConfiguration> halConfiguration,
+                                                                        MessageResolver messageResolver, AutowireCapableBeanFactory beanFactory) {
+        // the builder is a prototype bean carrying the spring.jackson.* settings, the JSON ObjectMapper isn't affected
+        ObjectMapper mapper = builder.factory(new CBORFactory()).build();
+        mapper.registerModule(new Jackson2HalModule());
+        mapper.setHandlerInstantiator(new Jackson2HalModule.HalHandlerInstantiator(relProvider,
+                curieProvider.getIfAvailable(() -> CurieProvider.NONE), messageResolver,
+                halConfiguration.getIfAvailable(HalConfiguration::new), beanFactory));
+        return new MappingJackson2CborHttpMessageConverter(mapper);
+    }
+}
@@ -0,0 +1,36 @@
+package payroll;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounds how many expensive requests run at the same time. Unlike a Semaphore there is no queue of waiting
+ * threads: a request beyond the limit is turned away at once, so a flood of them can't pile up Tomcat threads.
+ **/
+class ConcurrencyLimiter {
+    private final int limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    ConcurrencyLimiter(int limit) {
+        this.limit = Math.max(1, limit);
+    }
+
+    boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        inFlight.decrementAndGet();
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+}
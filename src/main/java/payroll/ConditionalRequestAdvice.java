@@ -0,0 +1,89 @@
+package payroll;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Conditional requests for employee resources.
+ * <p>
+ * Every EntityModel<Employee> and employee CollectionModel written by the EmployeeController gets an ETag
+ * (see EmployeeETags). On GET/HEAD the ETag is compared with If-None-Match right before serialization; when the
+ * client already has the current representation the answer is a bodyless 304, so neither Jackson nor the network
+ * has to deal with it again.
+ * <p>
+ * The same URLs answer with HAL JSON or CBOR depending on Accept, so every response body carries Vary: Accept and a
+ * shared cache never hands the one to a client that asked for the other.
+ * <p>
+ * Failed If-Match checks on PUT (and updates that lost the optimistic locking race) are answered with a 412.
+ **/
+@ControllerAdvice
+class ConditionalRequestAdvice implements ResponseBodyAdvice<Object> {
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return returnType.getContainingClass() == EmployeeController.class;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (!(request instanceof ServletServerHttpRequest) || !(response instanceof ServletServerHttpResponse)) {
+            return body;
+        }
+        HttpServletResponse servletResponse = ((ServletServerHttpResponse) response).getServletResponse();
+        // on the servlet response itself, a 304 is sent without writing the headers of the ServerHttpResponse
+        if (!servletResponse.getHeaders(HttpHeaders.VARY).contains(HttpHeaders.ACCEPT)) {
+            servletResponse.addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT);
+        }
+        String etag = etagOf(body, selectedContentType);
+        if (etag == null) {
+            return body;
+        }
+        ServletWebRequest webRequest = new ServletWebRequest(((ServletServerHttpRequest) request).getServletRequest(), servletResponse);
+        // for GET/HEAD this sets the ETag header, and the 304 status when If-None-Match matches; a null body is not written
+        if (webRequest.checkNotModified(etag)) {
+            return null;
+        }
+        if (servletResponse.getHeader(HttpHeaders.ETAG) == null) {
+            servletResponse.setHeader(HttpHeaders.ETAG, etag);
+        }
+        return body;
+    }
+
+    private static String etagOf(Object body, MediaType contentType) {
+        if (body instanceof EntityModel && ((EntityModel<?>) body).getContent() instanceof Employee) {
+            return EmployeeETags.of((Employee) ((EntityModel<?>) body).getContent(), contentType);
+        }
+        if (body instanceof CollectionModel) {
+            return EmployeeETags.of((CollectionModel<?>) body, contentType);
+        }
+        return null;
+    }
+
+    @ResponseBody
+    @ExceptionHandler({EmployeePreconditionFailedException.class, ObjectOptimisticLockingFailureException.class})
+    @ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+    String preconditionFailedHandler(RuntimeException ex) {
+        return ex instanceof EmployeePreconditionFailedException ? ex.getMessage()
+                : "Employee was modified concurrently, fetch it again and retry with its new " + HttpHeaders.ETAG;
+    }
+}
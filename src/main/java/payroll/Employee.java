@@ -1,22 +1,58 @@
 package payroll;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.hibernate.annotations.Where;
+
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
 import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.SequenceGenerator;
+import javax.persistence.Table;
+import javax.persistence.Transient;
+import javax.persistence.Version;
 import java.util.Objects;
 
 // @Entity is a JPA annotation to make this object ready for storage in a JPA-based data store.
 @Entity
+// indexes for the filtered GET /employees: every one ends with id, so "role = ? and id > ? order by id" is a pure
+// index seek and the name prefixes (like 'Bag%') are range scans instead of full table scans.
+@Table(indexes = {
+        @Index(name = "idx_employee_role", columnList = "role, id"),
+        @Index(name = "idx_employee_first_name", columnList = "firstName, id"),
+        @Index(name = "idx_employee_last_name", columnList = "lastName, id")
+})
+// soft deleted employees (payroll.delete.soft=true, see EmployeeDeleter) are left out of every JPA read
+@Where(clause = "deleted = false")
 public class Employee {
     // generating id with generated value;
     // @id is marked with more JPA annotations to indicate it’s the primary key and automatically populated by the JPA provider.
+    // ids come from a pooled sequence: one sequence call hands out allocationSize ids, so inserts don't need a round trip
+    // per row and Hibernate can group them into JDBC batches (IDENTITY columns would disable insert batching entirely).
     private @Id
-    @GeneratedValue
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "employee_seq")
+    @SequenceGenerator(name = "employee_seq", sequenceName = "employee_seq", allocationSize = 50)
     Long id;
     private String role;
+    // optimistic locking: incremented by JPA on every update and checked in the UPDATE's where clause.
+    // It isn't part of the JSON body, clients see it as the ETag of the resource (see EmployeeETags).
+    @Version
+    @JsonIgnore
+    private Long version;
     // -- after upgrading server  --
     private String firstName;
     private String lastName;
+    // soft delete marker, only ever set by EmployeeRepository.softDeleteAllByIds; the column default keeps rows
+    // inserted with plain SQL visible
+    @JsonIgnore
+    @Column(columnDefinition = "boolean default false not null")
+    private boolean deleted;
+    // last getName() result, checked against firstName and lastName before it is reused, so it can't go stale even
+    // when Hibernate writes the fields directly; a single immutable String, safe to share with the cached instances
+    @Transient
+    private String name;
 
 
     public Employee() {
@@ -51,9 +87,33 @@ public class Employee {
         return this.role;
     }
 
+    public Long getVersion() {
+        return this.version;
+    }
+
+    // composed once per change of the name fields, not once per serialization; a missing part is left out
     public String getName() {
+        String first = this.firstName;
+        String last = this.lastName;
+        String composed = this.name;
+        if (composed == null || !isComposedOf(composed, first, last)) {
+            composed = composeName(first, last);
+            this.name = composed;
+        }
+        return composed;
+    }
 
-        return this.firstName + " " + this.lastName;
+    static String composeName(String first, String last) {
+        return first == null ? last : last == null ? first : first + " " + last;
+    }
+
+    // a character comparison instead of composing the name again and calling equals
+    private static boolean isComposedOf(String name, String first, String last) {
+        if (first == null || last == null) {
+            return name.equals(first == null ? last : first);
+        }
+        return name.length() == first.length() + 1 + last.length() && name.startsWith(first)
+                && name.charAt(first.length()) == ' ' && name.endsWith(last);
     }
 
     public String getFirstName() {
@@ -68,15 +128,52 @@ public class Employee {
         this.id = primaryKey;
     }
 
+    // only for rows written by plain SQL (see EmployeeUpsertRepositoryImpl), JPA maintains it for entities
+    void setVersion(Long version) {
+        this.version = version;
+    }
+
     public void setRole(String role) {
         this.role = role;
     }
 
+    // The first word is the first name, everything after it the last name ("Ludwig van Beethoven" has the last name
+    // "van Beethoven"), a single word is a first name only. Parsed by index, without split()'s array, and a part
+    // that didn't change keeps its current String, so re-sending the same name doesn't allocate at all.
     public void setName(String name) {
-        String[] names = name.split(" ");
-        this.firstName = names[0];
-        this.lastName = names[1];
+        if (name == null) {
+            this.firstName = null;
+            this.lastName = null;
+            return;
+        }
+        int end = name.length();
+        while (end > 0 && Character.isWhitespace(name.charAt(end - 1))) {
+            end--;
+        }
+        int start = 0;
+        while (start < end && Character.isWhitespace(name.charAt(start))) {
+            start++;
+        }
+        int firstEnd = start;
+        while (firstEnd < end && !Character.isWhitespace(name.charAt(firstEnd))) {
+            firstEnd++;
+        }
+        int lastStart = firstEnd;
+        while (lastStart < end && Character.isWhitespace(name.charAt(lastStart))) {
+            lastStart++;
+        }
+        this.firstName = part(this.firstName, name, start, firstEnd);
+        this.lastName = part(this.lastName, name, lastStart, end);
+    }
 
+    private static String part(String current, String name, int from, int to) {
+        if (from == to) {
+            return null;
+        }
+        if (current != null && current.length() == to - from && name.regionMatches(from, current, 0, to - from)) {
+            return current;
+        }
+        return name.substring(from, to);
     }
 
     public void setFirstName(String firstName) {
@@ -100,9 +197,15 @@ public class Employee {
                 && Objects.equals(this.firstName, tempEmployee.firstName) && Objects.equals(this.lastName, tempEmployee.lastName);
     }
 
+    // the same value as Objects.hash(id, firstName, lastName, role), without its varargs array
     @Override
     public int hashCode() {
-        return Objects.hash(this.id, this.firstName, this.lastName, this.role);
+        int result = 1;
+        result = 31 * result + Objects.hashCode(this.id);
+        result = 31 * result + Objects.hashCode(this.firstName);
+        result = 31 * result + Objects.hashCode(this.lastName);
+        result = 31 * result + Objects.hashCode(this.role);
+        return result;
     }
 
     @Override
@@ -0,0 +1,155 @@
+package payroll;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headcount in total and per role for GET /employees/aggregates, served from in-memory counters instead of a
+ * COUNT(*) or the whole roster per dashboard read.
+ * <p>
+ * The counters are loaded with one GROUP BY role once the application is ready and follow the committed
+ * EmployeeChangeEvents from there: a CREATED employee is counted right away, if its event was created after the
+ * GROUP BY had returned (its write committed later, so the GROUP BY can't have counted it). An older CREATED event
+ * that is only delivered now may or may not be counted already, it marks the counters stale instead. UPDATED and DELETED events don't tell
+ * which role the employee had before (the writes don't read it first, see EmployeeUpsertRepository and
+ * EmployeeDeleter), so they mark the counters stale and the "payroll-aggregates" thread runs the GROUP BY again
+ * within payroll.aggregates.refresh-ms, once for all the changes in between. Every payroll.aggregates.reconcile-ms
+ * it runs anyway, which also picks up writes that didn't go through this instance.
+ * <p>
+ * A reconciliation builds new counters and swaps them in. Changes delivered while it ran mark the new counters
+ * stale right away, the GROUP BY may or may not have seen them.
+ **/
+@Component
+public class EmployeeAggregates implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(EmployeeAggregates.class);
+
+    // one generation of counters, replaced as a whole by every reconciliation
+    private static final class Counts {
+        private final LongAdder total = new LongAdder();
+        private final ConcurrentHashMap<String, LongAdder> roles = new ConcurrentHashMap<>();
+        private final Instant reconciledAt = Instant.now();
+        // the last EmployeeChangeEvent sequence once the GROUP BY had returned, CREATED events above it are new
+        private final long fence;
+
+        private Counts(long fence) {
+            this.fence = fence;
+        }
+
+        private void add(String role, long headcount) {
+            total.add(headcount);
+            if (role != null) {
+                roles.computeIfAbsent(role, key -> new LongAdder()).add(headcount);
+            }
+        }
+    }
+
+    private final EmployeeRepository repository;
+    private final long refreshMillis;
+    private final long reconcileMillis;
+    private final ScheduledExecutorService reconciler = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "payroll-aggregates");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean stale = new AtomicBoolean();
+    // committed changes seen so far, tells a reconciliation whether any came in while it ran
+    private final AtomicLong changes = new AtomicLong();
+    private final Counter reconciliations;
+    // null until the first reconciliation
+    private volatile Counts counts;
+
+    public EmployeeAggregates(EmployeeRepository repository, MeterRegistry registry,
+                              @Value("${payroll.aggregates.refresh-ms:5000}") long refreshMillis,
+                              @Value("${payroll.aggregates.reconcile-ms:60000}") long reconcileMillis) {
+        this.repository = repository;
+        this.refreshMillis = Math.max(1, refreshMillis);
+        this.reconcileMillis = Math.max(this.refreshMillis, reconcileMillis);
+        this.reconciliations = Counter.builder("payroll.aggregates.reconciliations")
+                .description("GROUP BY role recounts of the headcount")
+                .register(registry);
+    }
+
+    // after the CommandLineRunners, so the seeded or generated employees are counted from the start
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        reconciler.execute(this::reconcile);
+        reconciler.scheduleWithFixedDelay(this::refresh, refreshMillis, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+
+    // after commit only, like the EmployeeChangeStream
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onChange(EmployeeChangeEvent event) {
+        changes.incrementAndGet();
+        Counts current = counts;
+        if (event.getType() == EmployeeChangeEvent.Type.CREATED && current != null && event.sequence() > current.fence) {
+            current.add(event.getEmployee().getRole(), 1);
+        } else {
+            stale.set(true);
+        }
+    }
+
+    public EmployeeHeadcount headcount() {
+        Counts current = counts;
+        if (current == null) {
+            reconcile();
+            current = counts;
+        }
+        Map<String, Long> roles = new TreeMap<>();
+        current.roles.forEach((role, headcount) -> roles.put(role, headcount.sum()));
+        return new EmployeeHeadcount(current.total.sum(), roles, current.reconciledAt);
+    }
+
+    private void refresh() {
+        try {
+            Counts current = counts;
+            boolean due = current == null
+                    || current.reconciledAt.plusMillis(reconcileMillis).isBefore(Instant.now());
+            if (stale.getAndSet(false) || due) {
+                reconcile();
+            }
+        } catch (RuntimeException ex) {
+            stale.set(true);
+            log.warn("Reconciling the employee headcount failed", ex);
+        }
+    }
+
+    // package-private for the tests
+    synchronized void reconcile() {
+        long before = changes.get();
+        List<RoleHeadcount> rows = repository.headcountByRole();
+        Counts reconciled = new Counts(EmployeeChangeEvent.lastSequence());
+        for (RoleHeadcount row : rows) {
+            reconciled.add(row.getRole(), row.getHeadcount());
+        }
+        counts = reconciled;
+        reconciliations.increment();
+        if (changes.get() != before) {
+            stale.set(true);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        reconciler.shutdownNow();
+    }
+}
@@ -0,0 +1,121 @@
+package payroll;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Saves a large batch of employees in chunks, one transaction per chunk.
+ * <p>
+ * Inside a chunk the existing rows are loaded with a single IN query, new employees are persisted and existing ones
+ * are changed in place; Hibernate then flushes the whole chunk as JDBC batches (hibernate.jdbc.batch_size) instead of
+ * one statement and one transaction per employee. The persistence context is cleared after every chunk so memory
+ * stays bounded however many employees are sent. If a chunk fails, only that chunk is rolled back and its
+ * elements are reported as FAILED; the chunks before and after it are still written.
+ **/
+@Component
+public class EmployeeBulkWriter {
+    private static final Logger log = LoggerFactory.getLogger(EmployeeBulkWriter.class);
+
+    private final EmployeeRepository repository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher events;
+    private final Cache cache;
+    private final int chunkSize;
+
+    public EmployeeBulkWriter(EmployeeRepository repository, EntityManager entityManager, PlatformTransactionManager transactionManager,
+                              ApplicationEventPublisher events, CacheManager cacheManager,
+                              @Value("${payroll.bulk.chunk-size:1000}") int chunkSize) {
+        this.repository = repository;
+        this.entityManager = entityManager;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.events = events;
+        this.cache = cacheManager.getCache(EmployeeRepository.EMPLOYEE_CACHE);
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    public List<BulkItemResult> saveAll(List<Employee> employees) {
+        List<BulkItemResult> results = new ArrayList<>(employees.size());
+        for (int from = 0; from < employees.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, employees.size());
+            results.addAll(saveChunk(employees.subList(from, to), from));
+        }
+        return results;
+    }
+
+    private List<BulkItemResult> saveChunk(List<Employee> chunk, int offset) {
+        // the ids as sent, for the results of a chunk that fails (the employees of the request are never changed)
+        List<Long> requestedIds = chunk.stream().map(Employee::getId).collect(Collectors.toList());
+        try {
+            List<BulkItemResult> results = transactionTemplate.execute(status -> writeChunk(chunk, offset));
+            if (results == null) {
+                return Collections.emptyList();
+            }
+            // updates bypass repository.save, so drop the cached copies ourselves once they are committed
+            if (cache != null) {
+                results.stream().filter(result -> result.getStatus() == BulkItemResult.Status.UPDATED)
+                        .forEach(result -> cache.evict(result.getId()));
+            }
+            return results;
+        } catch (RuntimeException ex) {
+            log.warn("Bulk chunk [" + offset + ", " + (offset + chunk.size()) + ") rolled back", ex);
+            List<BulkItemResult> failed = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                failed.add(BulkItemResult.failed(offset + i, requestedIds.get(i), NestedExceptionUtils.getMostSpecificCause(ex).getMessage()));
+            }
+            return failed;
+        } finally {
+            // detach everything from this chunk, the request may share one EntityManager across chunks (open-in-view)
+            entityManager.clear();
+        }
+    }
+
+    private List<BulkItemResult> writeChunk(List<Employee> chunk, int offset) {
+        List<Long> ids = chunk.stream().map(Employee::getId).filter(Objects::nonNull).collect(Collectors.toList());
+        Map<Long, Employee> existing = ids.isEmpty() ? Collections.emptyMap()
+                : repository.findAllById(ids).stream().collect(Collectors.toMap(Employee::getId, Function.identity()));
+
+        List<BulkItemResult> results = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            Employee employee = chunk.get(i);
+            Employee current = employee.getId() == null ? null : existing.get(employee.getId());
+            if (current != null) {
+                current.setFirstName(employee.getFirstName());
+                current.setLastName(employee.getLastName());
+                current.setRole(employee.getRole());
+                results.add(BulkItemResult.updated(offset + i, current.getId()));
+                events.publishEvent(EmployeeChangeEvent.updated(current));
+            } else {
+                // a copy gets a fresh id from the sequence, the same as a single POST would, also for an unknown id
+                // (reported as CREATED_WITH_NEW_ID); the id is assigned right here at persist time, the INSERT itself
+                // is batched at flush
+                Employee created = new Employee(employee.getFirstName(), employee.getLastName(), employee.getRole());
+                entityManager.persist(created);
+                results.add(employee.getId() == null ? BulkItemResult.created(offset + i, created.getId())
+                        : BulkItemResult.createdWithNewId(offset + i, created.getId()));
+                events.publishEvent(EmployeeChangeEvent.created(created));
+            }
+        }
+        // the change events of the chunk go out once (and only if) it commits, see EmployeeChangeStream
+        // flush inside the transaction so constraint violations roll back this chunk only
+        entityManager.flush();
+        return results;
+    }
+}
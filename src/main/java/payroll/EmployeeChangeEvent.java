@@ -0,0 +1,67 @@
+package payroll;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One committed change of an employee, as published on GET /employees/events.
+ * CREATED and UPDATED carry the employee as it was written, DELETED only the id.
+ * <p>
+ * Events are published inside the transaction of their write and delivered after its commit, so the sequence
+ * they get here tells which writes can't have been committed yet at some point (see EmployeeAggregates).
+ **/
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class EmployeeChangeEvent {
+
+    public enum Type {
+        CREATED, UPDATED, DELETED
+    }
+
+    private static final AtomicLong SEQUENCE = new AtomicLong();
+
+    private final long sequence = SEQUENCE.incrementAndGet();
+    private final Type type;
+    private final Long id;
+    private final Employee employee;
+
+    private EmployeeChangeEvent(Type type, Long id, Employee employee) {
+        this.type = type;
+        this.id = id;
+        this.employee = employee;
+    }
+
+    static EmployeeChangeEvent created(Employee employee) {
+        return new EmployeeChangeEvent(Type.CREATED, employee.getId(), employee);
+    }
+
+    static EmployeeChangeEvent updated(Employee employee) {
+        return new EmployeeChangeEvent(Type.UPDATED, employee.getId(), employee);
+    }
+
+    static EmployeeChangeEvent deleted(Long id) {
+        return new EmployeeChangeEvent(Type.DELETED, id, null);
+    }
+
+    // the sequence of the last event created so far
+    static long lastSequence() {
+        return SEQUENCE.get();
+    }
+
+    // not part of the JSON, the stream has ids of its own
+    long sequence() {
+        return this.sequence;
+    }
+
+    public Type getType() {
+        return this.type;
+    }
+
+    public Long getId() {
+        return this.id;
+    }
+
+    public Employee getEmployee() {
+        return this.employee;
+    }
+}
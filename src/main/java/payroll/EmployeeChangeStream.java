@@ -0,0 +1,257 @@
+package payroll;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans committed EmployeeChangeEvents out to the Server-Sent Events subscribers of GET /employees/events.
+ * <p>
+ * Every event gets the next sequence number and is kept in a ring buffer of the last payroll.events.buffer-size
+ * events. Its SSE id is "epoch-sequence", the epoch being drawn at random once per process: the sequence starts over
+ * with every start, an id of an earlier process (or another instance) must never be taken for one of ours. A client
+ * reconnecting with Last-Event-ID gets everything after that id replayed before the live events; if the id already
+ * fell out of the buffer or is from another epoch it gets a RESET event instead and has to fetch GET /employees once
+ * more before following the stream again.
+ * <p>
+ * The buffer and the subscriber list are only touched by a single "payroll-events" thread, which keeps the events
+ * in commit order without any locking. That thread never writes to a client: it hands each event to the bounded
+ * queue of every subscriber (payroll.events.subscriber-queue events), and each queue is drained by a
+ * "payroll-events-send" thread of its own. A client that stops reading only blocks its own sender (Tomcat fails the
+ * blocked write after its connection timeout); once its queue is full it is dropped and counted in
+ * payroll.events.lagging, and resumes from its Last-Event-ID after reconnecting like any other client.
+ **/
+@Component
+public class EmployeeChangeStream implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(EmployeeChangeStream.class);
+
+    static final String RESET = "RESET";
+
+    private final String epoch = Long.toString(ThreadLocalRandom.current().nextLong(Long.MAX_VALUE), 36);
+    private final EmployeeChangeEvent[] buffer;
+    private final int queueCapacity;
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private final Counter lagging;
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "payroll-events");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // at most one draining task per subscriber at a time, so at most one thread per subscriber
+    private final ExecutorService senders = Executors.newCachedThreadPool(task -> {
+        Thread thread = new Thread(task, "payroll-events-send");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // sequence number of the last event, the buffer holds the events lastId - buffer.length + 1 .. lastId
+    private long lastId;
+
+    public EmployeeChangeStream(@Value("${payroll.events.buffer-size:1000}") int bufferSize,
+                                @Value("${payroll.events.subscriber-queue:1000}") int queueCapacity,
+                                MeterRegistry registry) {
+        this.buffer = new EmployeeChangeEvent[Math.max(1, bufferSize)];
+        this.queueCapacity = Math.max(1, queueCapacity);
+        Gauge.builder("payroll.events.subscribers", subscriberCount, AtomicInteger::get)
+                .description("Open GET /employees/events streams")
+                .register(registry);
+        this.lagging = Counter.builder("payroll.events.lagging")
+                .description("Event subscribers dropped for not keeping up with the events")
+                .register(registry);
+    }
+
+    // after commit only, a rolled back write never shows up in the stream; events published outside of a
+    // transaction (the repository already committed) are taken as they come
+    @TransactionalEventListener(fallbackExecution = true)
+    public void publish(EmployeeChangeEvent event) {
+        dispatcher.execute(() -> {
+            long id = ++lastId;
+            buffer[(int) (id % buffer.length)] = event;
+            for (Iterator<Subscriber> it = subscribers.iterator(); it.hasNext(); ) {
+                Subscriber subscriber = it.next();
+                if (!subscriber.offer(event(id, event))) {
+                    // a whole queue behind (or failed already and about to be dropped)
+                    it.remove();
+                    subscriberCount.decrementAndGet();
+                    if (!subscriber.closed) {
+                        lagging.increment();
+                        subscriber.close();
+                    }
+                }
+            }
+        });
+    }
+
+    // replays the buffered events after lastEventId (none when it is null) and then follows the live events
+    public SseEmitter subscribe(String lastEventId) {
+        return subscribe(new SseEmitter(), lastEventId);
+    }
+
+    SseEmitter subscribe(SseEmitter emitter, String lastEventId) {
+        Subscriber subscriber = new Subscriber(emitter);
+        dispatcher.execute(() -> {
+            if (lastEventId != null && !replay(subscriber, sequenceOf(lastEventId))) {
+                subscriber.clear();
+                subscriber.offer(SseEmitter.event().id(id(lastId)).name(RESET).data(""));
+            }
+            subscribers.add(subscriber);
+            subscriberCount.incrementAndGet();
+        });
+        // a timed out, completed or failed (disconnected) stream is dropped right away, not only at the next
+        // event that can't be sent to it
+        emitter.onTimeout(emitter::complete);
+        emitter.onCompletion(() -> drop(emitter));
+        emitter.onError(ex -> drop(emitter));
+        return emitter;
+    }
+
+    // false when the events after the sequence can't be replayed: gone from the buffer, not from this epoch, or
+    // more than the subscriber's queue holds
+    private boolean replay(Subscriber subscriber, long after) {
+        long oldest = Math.max(1, lastId - buffer.length + 1);
+        if (after < 0 || after + 1 < oldest || after > lastId) {
+            return false;
+        }
+        for (long id = after + 1; id <= lastId; id++) {
+            if (!subscriber.offer(event(id, buffer[(int) (id % buffer.length)]))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the sequence of one of our ids, -1 for anything else
+    private long sequenceOf(String lastEventId) {
+        String prefix = epoch + "-";
+        if (!lastEventId.startsWith(prefix)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.substring(prefix.length()));
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private String id(long sequence) {
+        return epoch + "-" + sequence;
+    }
+
+    private SseEmitter.SseEventBuilder event(long id, EmployeeChangeEvent event) {
+        return SseEmitter.event().id(id(id)).name(event.getType().name()).data(event, MediaType.APPLICATION_JSON);
+    }
+
+    // on the dispatcher like every other change of the subscribers; a subscriber already removed by publish (or
+    // dropped by the other callback) isn't counted twice
+    private void drop(SseEmitter emitter) {
+        try {
+            dispatcher.execute(() -> {
+                if (subscribers.removeIf(subscriber -> subscriber.emitter == emitter)) {
+                    subscriberCount.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // shut down, destroy completed every subscriber already
+        }
+    }
+
+    @Override
+    public void destroy() {
+        dispatcher.execute(() -> subscribers.forEach(Subscriber::close));
+        dispatcher.shutdown();
+        try {
+            dispatcher.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        senders.shutdown();
+    }
+
+    /**
+     * One open stream: the events the dispatcher hands over and the sender writing them. SseEmitter.send and complete
+     * lock the emitter, so both only ever happen on the sender, never on the dispatcher.
+     **/
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<SseEmitter.SseEventBuilder> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        boolean offer(SseEmitter.SseEventBuilder event) {
+            if (!queue.offer(event)) {
+                return false;
+            }
+            drain();
+            return true;
+        }
+
+        void clear() {
+            queue.clear();
+        }
+
+        void close() {
+            closed = true;
+            drain();
+        }
+
+        private void drain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::send);
+                } catch (RejectedExecutionException ex) {
+                    // shut down, the stream ends with the container
+                    draining.set(false);
+                }
+            }
+        }
+
+        private void send() {
+            try {
+                for (SseEmitter.SseEventBuilder event; !closed && (event = queue.poll()) != null; ) {
+                    emitter.send(event);
+                }
+                if (closed) {
+                    queue.clear();
+                    emitter.complete();
+                    return;
+                }
+            } catch (IOException | IllegalStateException ex) {
+                log.debug("Dropping employee event subscriber", ex);
+                closed = true;
+                emitter.completeWithError(ex);
+                return;
+            }
+            draining.set(false);
+            // an event offered after the last poll but before draining was reset would wait for the next one
+            if (!queue.isEmpty() || closed) {
+                drain();
+            }
+        }
+    }
+}
@@ -2,23 +2,41 @@ package payroll;
 //To wrap your repository with a web layer, you must turn to Spring MVC. Thanks to Spring Boot, there is little in infrastructure to code.
 // Instead, we can focus on actions:
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
 
 import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
 import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-
-import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.linkTo;
-import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * @RestController indicates that the data returned by each method will be written straight into
@@ -26,15 +44,48 @@ import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.methodOn;
  **/
 @RestController
 public class EmployeeController {
+    static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final EmployeeRepository repository;
     private final EmployeeModelAssembler assembler;
+    private final EmployeeExporter exporter;
+    private final EmployeeBulkWriter bulkWriter;
+    private final EmployeeDeleter deleter;
+    private final EmployeeRoleWriter roleWriter;
+    private final EmployeeAggregates aggregates;
+    private final EmployeeChangeStream changes;
+    private final ApplicationEventPublisher events;
+    private final TransactionTemplate writeTransaction;
+    private final Cache cache;
+    private final int maxPageSize;
 
     //An EmployeeRepository is injected by constructor into the controller.
     //inject the EmployeeAssembler
-    public EmployeeController(EmployeeRepository repository, EmployeeModelAssembler assembler) {
+    //The handlers return plain values in either execution mode, with payroll.execution.async=true they simply run on a
+    //worker of the EmployeeRequestExecutor instead of the Tomcat thread (see AsyncExecutionFilter).
+    //Reads and writes only run in the transactions of the repository and the writers (spring.jpa.open-in-view is off).
+    //Every write publishes an EmployeeChangeEvent inside its transaction, which the EmployeeChangeStream sends to its
+    //subscribers after commit.
+    //POST and PUT run their one statement and the event in a transaction of their own (writeTransaction); the cached
+    //employee is evicted once more after commit, the repository's eviction inside the transaction could be undone by a
+    //concurrent read caching the old row again before the commit.
+    public EmployeeController(EmployeeRepository repository, EmployeeModelAssembler assembler, EmployeeExporter exporter,
+                              EmployeeBulkWriter bulkWriter, EmployeeDeleter deleter, EmployeeRoleWriter roleWriter,
+                              EmployeeAggregates aggregates, EmployeeChangeStream changes, ApplicationEventPublisher events,
+                              PlatformTransactionManager transactionManager, CacheManager cacheManager, @Value("${payroll.paging.max-size:100}") int maxPageSize) {
 
         this.repository = repository;
         this.assembler = assembler;
+        this.exporter = exporter;
+        this.bulkWriter = bulkWriter;
+        this.deleter = deleter;
+        this.roleWriter = roleWriter;
+        this.aggregates = aggregates;
+        this.changes = changes;
+        this.events = events;
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+        this.cache = cacheManager.getCache(EmployeeRepository.EMPLOYEE_CACHE);
+        this.maxPageSize = maxPageSize;
     }
 
     // Aggregate root
@@ -64,10 +115,108 @@ public class EmployeeController {
     CollectionModel<EntityModel<Employee>> all() {
 //The code is, again, almost the same, however you get to replace all that EntityModel<Employee> creation logic with map(assembler::toModel). Thanks to Java 8 method references, it’s super easy to plug it in and simplify your controller.
 //A key design goal of Spring HATEOAS is to make it easier to do The Right Thing™. In this scenario: adding hypermedia to your service without hard coding a thing.
-        List<EntityModel<Employee>> employees = repository.findAll().stream()
-                .map(assembler::toModel)
-                .collect(Collectors.toList());
-        return CollectionModel.of(employees, linkTo(methodOn(EmployeeController.class).all()).withSelfRel());
+//The links are resolved against the current request once and then reused for every employee (see EmployeeModelAssembler.toCollectionModel()).
+        return assembler.toCollectionModel(repository.findAll());
+    }
+
+    /**
+     * Sparse fieldset of the aggregate root, e.g. /employees?fields=id,name for a picker that only shows names.
+     * Only the columns behind the requested fields are read (see EmployeeFields), unknown fields are a 400.
+     **/
+    @GetMapping(value = "/employees", params = {"fields", "!size"})
+    CollectionModel<EntityModel<EmployeeFields>> allFields(@RequestParam String fields) {
+        Set<String> selected = EmployeeFields.parse(fields);
+        EmployeeModelAssembler.LinkTemplates links = assembler.linkTemplates();
+        List<EntityModel<EmployeeFields>> content = new ArrayList<>();
+        for (EmployeeFields employee : repository.searchFields(EmployeeFilter.NONE, null, null, Integer.MAX_VALUE, selected)) {
+            content.add(links.toModel(employee, employee.getId()));
+        }
+        return CollectionModel.of(content, links.employees().withSelfRel());
+    }
+
+    /**
+     * Paged mode of the aggregate root, selected as soon as the client sends a size parameter.
+     * <p>
+     * Instead of OFFSET paging (which still scans every skipped row) the page is located with a keyset cursor:
+     * after=X seeks to the rows with id greater than X, before=X to the rows with id lower than X.
+     * Both are primary key range scans, so every page costs the same no matter how deep the client walks
+     * or how large the table grows. The size is clamped to payroll.paging.max-size and the next/prev
+     * links built by the EmployeeModelAssembler carry the cursors for the following requests.
+     * <p>
+     * role, firstName and lastName filter on the server (exact role, name prefixes) using the indexes declared on
+     * Employee, so the HR UI gets exactly the matching page instead of downloading everyone.
+     * With fields the page holds sparse EmployeeFields instead of full employees, and the links keep the fields.
+     **/
+    @GetMapping(value = "/employees", params = "size")
+    CollectionModel<?> page(@RequestParam(required = false) Long after,
+                            @RequestParam(required = false) Long before,
+                            @RequestParam int size,
+                            @RequestParam(required = false) String role,
+                            @RequestParam(required = false) String firstName,
+                            @RequestParam(required = false) String lastName,
+                            @RequestParam(required = false) String fields) {
+        EmployeeFilter filter = new EmployeeFilter(role, firstName, lastName);
+        int limit = Math.max(1, Math.min(size, maxPageSize));
+        if (fields == null) {
+            return keysetPage(repository.search(filter, after, before, limit + 1), Employee::getId,
+                    filter, null, after, before, limit);
+        }
+        Set<String> selected = EmployeeFields.parse(fields);
+        return keysetPage(repository.searchFields(filter, after, before, limit + 1, selected), EmployeeFields::getId,
+                filter, String.join(",", selected), after, before, limit);
+    }
+
+    // window holds up to limit + 1 rows: one extra row tells us whether there is another page in the direction we are walking
+    private <T> CollectionModel<EntityModel<T>> keysetPage(List<T> window, Function<? super T, Long> idOf, EmployeeFilter filter,
+                                                           String fields, Long after, Long before, int limit) {
+        List<T> employees = new ArrayList<>(window);
+        boolean hasPrev;
+        boolean hasNext;
+        if (before != null) {
+            hasPrev = employees.size() > limit;
+            if (hasPrev) {
+                employees.remove(limit);
+            }
+            Collections.reverse(employees);
+            hasNext = true;
+        } else {
+            hasNext = employees.size() > limit;
+            if (hasNext) {
+                employees.remove(limit);
+            }
+            hasPrev = after != null;
+        }
+        return assembler.toKeysetModel(employees, idOf, filter, fields, after, before, limit, hasPrev, hasNext);
+    }
+
+    /**
+     * Full roster export for bulk consumers (e.g. the nightly payroll sync), one plain Employee JSON object per line.
+     * <p>
+     * StreamingResponseBody hands the response stream to an MVC async thread, so rows are written while they are
+     * read from the database instead of first building a CollectionModel of everything in memory.
+     **/
+    @GetMapping(value = "/employees/export", produces = "application/x-ndjson")
+    ResponseEntity<StreamingResponseBody> export() {
+        return ResponseEntity.ok()
+                .contentType(APPLICATION_NDJSON)
+                .body(exporter::export);
+    }
+
+    // headcount in total and per role for the finance dashboards, from the in-memory counters of the
+    // EmployeeAggregates: no COUNT(*) and no roster read per request
+    @GetMapping("/employees/aggregates")
+    ResponseEntity<EmployeeHeadcount> aggregates() {
+        return ResponseEntity.ok(aggregates.headcount());
+    }
+
+    /**
+     * Change feed for consumers that used to poll GET /employees: a Server-Sent Events stream with one event per
+     * committed create, update or delete (see EmployeeChangeEvent). A reconnecting client sends the id of the last
+     * event it saw as Last-Event-ID and continues right after it, see EmployeeChangeStream for what is retained.
+     **/
+    @GetMapping(value = "/employees/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    SseEmitter events(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return changes.subscribe(lastEventId);
     }
 
 //    //posting new employee
@@ -83,11 +232,17 @@ public class EmployeeController {
 //    POST that handles "old" and "new" client requests where above code is old endpoint
     @PostMapping("/employees")
     ResponseEntity<?> newEmployee(@RequestBody Employee employee) {
-        EntityModel<Employee> entityModel = assembler.toModel(repository.save(employee));
+        Employee savedEmployee = writeTransaction.execute(status -> {
+            Employee saved = repository.save(employee);
+            events.publishEvent(EmployeeChangeEvent.created(saved));
+            return saved;
+        });
+        EntityModel<Employee> entityModel = assembler.toModel(savedEmployee);
         return ResponseEntity
                 .created(entityModel.getRequiredLink(IanaLinkRelations.SELF).toUri())
                 .body(entityModel);
     }
+
 // above , postMapping ---> The new Employee object is saved as before. But the resulting object is wrapped using the EmployeeModelAssembler.
 //
 //Spring MVC’s ResponseEntity is used to create an HTTP 201 Created status message. This type of response typically includes a Location response header, and we use the URI derived from the model’s self-related link.
@@ -96,6 +251,30 @@ public class EmployeeController {
 //
 //With these tweaks in place, you can use the same endpoint to create a new employee resource, and use the legacy name field
 
+    /**
+     * Bulk create/update for onboarding runs: employees without a known id are created, the others are replaced.
+     * The EmployeeBulkWriter saves them in chunked, JDBC-batched transactions and the response lists one result
+     * (CREATED, CREATED_WITH_NEW_ID, UPDATED or FAILED plus the id) per element, in request order.
+     **/
+    @PostMapping("/employees/bulk")
+    ResponseEntity<List<BulkItemResult>> bulkEmployees(@RequestBody List<Employee> employees) {
+        return ResponseEntity.ok(bulkWriter.saveAll(employees));
+    }
+
+    /**
+     * Bulk delete for offboarding runs: the body is the array of ids, the EmployeeDeleter removes them with one
+     * statement per chunk in a single transaction. Unknown ids are no error, the response tells how many of the
+     * requested employees existed.
+     **/
+    @PostMapping("/employees/bulk-delete")
+    ResponseEntity<Map<String, Integer>> bulkDeletedEmployees(@RequestBody List<Long> ids) {
+        int deleted = deleter.delete(ids);
+        Map<String, Integer> result = new LinkedHashMap<>();
+        result.put("requested", ids.size());
+        result.put("deleted", deleted);
+        return ResponseEntity.ok(result);
+    }
+
 
     /**
      * get single employee
@@ -109,13 +288,20 @@ public class EmployeeController {
      **/
     @GetMapping("/employees/{id}")
     EntityModel<Employee> one(@PathVariable Long id) {
-
-        Employee employee = repository.findById(id) //
+        Employee employee = repository.findCachedById(id) //
                 .orElseThrow(() -> new EmployeeNotFoundException(id));
 
         return assembler.toModel(employee);
     }
 
+    // sparse fieldset of a single employee, e.g. /employees/1?fields=role; read past the cache, which holds full employees
+    @GetMapping(value = "/employees/{id}", params = "fields")
+    EntityModel<EmployeeFields> oneFields(@PathVariable Long id, @RequestParam String fields) {
+        Set<String> selected = EmployeeFields.parse(fields);
+        return assembler.toModel(repository.findFieldsById(id, selected)
+                .orElseThrow(() -> new EmployeeNotFoundException(id)));
+    }
+
     /*
      this is whole replace for obj
      if value did not exist within the request body will cause an error
@@ -147,32 +333,69 @@ public class EmployeeController {
     // It has a handy static method created() where we can plug in the resource’s URI.
     // It’s debatable if HTTP 201 Created carries the right semantics since we aren’t necessarily "creating" a new resource.
     // But it comes pre-loaded with a Location response header, so run with it.
+    //
+    // A single statement (see EmployeeUpsertRepository): without If-Match a MERGE replaces the employee or creates it
+    // (with a new id, like POST), with If-Match an UPDATE that only matches while the employee still has one of the
+    // listed ETags, else 412. Nothing is read first, so there is no window for a concurrent PUT to slip in between.
     @PutMapping("/employees/{id}")
-    ResponseEntity<?> updatedEmployee(@RequestBody Employee employee, @PathVariable Long id) {
-        Employee updatedEmployee = repository.findById(id).map(employee1 -> {
-            employee1.setName(employee.getName());
-            employee1.setRole(employee.getRole());
-            return repository.save(employee1);
-        }).orElseGet(() -> {
-            // if not found crete one with id
-            employee.setId(id);
-            return repository.save(employee);
-        });
+    ResponseEntity<?> updatedEmployee(@RequestBody Employee employee, @PathVariable Long id,
+                                      @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
+        // the body's role wins over one still buffered (or being flushed) by the EmployeeRoleWriter
+        Employee updatedEmployee = roleWriter.replace(id, () -> writeTransaction.execute(status -> {
+            Employee written = ifMatch == null ? repository.upsert(id, employee)
+                    : repository.updateIfVersion(id, employee, EmployeeETags.versions(ifMatch))
+                    .orElseThrow(() -> new EmployeePreconditionFailedException(id));
+            events.publishEvent(written.getVersion() == 0 ? EmployeeChangeEvent.created(written)
+                    : EmployeeChangeEvent.updated(written));
+            return written;
+        }));
+        if (cache != null) {
+            cache.evict(id);
+        }
         EntityModel<Employee> entityModel = assembler.toModel(updatedEmployee);
         return ResponseEntity
                 .created(entityModel.getRequiredLink(IanaLinkRelations.SELF).toUri())
                 .body(entityModel);
     }
 
+    /**
+     * Role only update for reorganization runs, the body is {"role": "..."}; no read before the write and only the
+     * role column is updated (see EmployeeRoleWriter, which can also coalesce them). Answers 204 once the role is
+     * written (404 for an unknown employee, 409 when a PUT of the whole employee replaced it before it was written),
+     * or 202 right away when payroll.writes.coalesce.ack=BUFFERED. Waiting for a coalesced write takes at most one
+     * payroll.writes.coalesce.interval-ms, no connection is held meanwhile.
+     **/
+    @PutMapping("/employees/{id}/role")
+    ResponseEntity<Void> updatedRole(@RequestBody Employee employee, @PathVariable Long id) {
+        CompletableFuture<EmployeeRoleWriter.Result> written = roleWriter.update(id, employee.getRole());
+        if (roleWriter.acknowledgesBuffered()) {
+            return ResponseEntity.accepted().build();
+        }
+        EmployeeRoleWriter.Result result;
+        try {
+            result = written.join();
+        } catch (CompletionException ex) {
+            // the flush failed, as if the write had run right here
+            throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+        }
+        if (result == EmployeeRoleWriter.Result.NOT_FOUND) {
+            throw new EmployeeNotFoundException(id);
+        }
+        return result == EmployeeRoleWriter.Result.SUPERSEDED
+                ? ResponseEntity.status(HttpStatus.CONFLICT).build() : ResponseEntity.noContent().build();
+    }
+
 //    @DeleteMapping("employees/{id}")
 //    void deletedEmployee(@PathVariable Long id) {
 //        repository.deleteById(id);
 //    }
 
     // updating deleteMapping
+    // no request body and no SELECT first: one DELETE (or soft delete UPDATE) statement through the EmployeeDeleter.
+    // Deleting is idempotent, an id that is already gone answers 204 as well.
     @DeleteMapping("employees/{id}")
-    ResponseEntity<?> deletedEmployee(@RequestBody Employee deletedEmployee, @PathVariable Long id) {
-        repository.deleteById(id);
+    ResponseEntity<?> deletedEmployee(@PathVariable Long id) {
+        deleter.delete(Collections.singletonList(id));
         return ResponseEntity.noContent().build();
         //This returns an HTTP 204 No Content response.
     }
@@ -0,0 +1,118 @@
+package payroll;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads payroll.seed.generate synthetic employees at startup, for load tests at realistic table sizes.
+ * <p>
+ * The rows never become entities: each INSERT ... SELECT FROM SYSTEM_RANGE lets H2 produce ROWS_PER_STATEMENT rows
+ * itself (names and roles are picked from the arrays below by id), one statement and transaction per chunk. The
+ * secondary indexes (role and name prefixes) are dropped for the load and built again from their stored definitions
+ * afterwards, also when the load fails, building them in one go is cheaper than maintaining them row by row.
+ * <p>
+ * The generated ids come after everything employee_seq has handed out so far, and the sequence is moved past them
+ * afterwards, so employees created through the API later never collide with them. Meant for an empty database at
+ * startup, writes running at the same time could still take ids from the old sequence range.
+ * <p>
+ * A warm restart of a persistent database (durable profile) that already has payroll.seed.generate employees
+ * generates nothing and reports the ids already there as the range.
+ **/
+@Component
+@ConditionalOnProperty("payroll.seed.generate")
+public class EmployeeDataGenerator implements CommandLineRunner {
+    private static final Logger log = LoggerFactory.getLogger(EmployeeDataGenerator.class);
+
+    static final int ROWS_PER_STATEMENT = 100_000;
+    // allocationSize of employee_seq, see Employee
+    private static final int ID_BLOCK = 50;
+
+    static final String[] FIRST_NAMES = {"Bilbo", "Frodo", "Samwise", "Meriadoc", "Peregrin", "Fredegar", "Lotho",
+            "Otho", "Lobelia", "Rosie", "Elanor", "Hamfast", "Bandobras", "Drogo", "Primula", "Belladonna",
+            "Bungo", "Gerontius", "Paladin", "Esmeralda"};
+    static final String[] LAST_NAMES = {"Baggins", "Gamgee", "Brandybuck", "Took", "Bolger", "Sackville", "Cotton",
+            "Proudfoot", "Boffin", "Bracegirdle", "Burrows", "Chubb", "Goodbody", "Grubb", "Hornblower",
+            "Maggot", "Underhill", "Twofoot", "Greenhand", "Smallburrow"};
+    static final String[] ROLES = {"burglar", "thief", "gardener", "guard", "cook", "miller", "farmer", "shirriff"};
+
+    private static final String INSERT = "insert into employee (id, deleted, first_name, last_name, role, version) "
+            + "select x, false, array_get(?, mod(x, ?) + 1), array_get(?, mod(x / ?, ?) + 1), array_get(?, mod(x * 7, ?) + 1), 0 "
+            + "from system_range(?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final long rows;
+    private volatile long firstId;
+    private volatile long lastId;
+
+    public EmployeeDataGenerator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                 @Value("${payroll.seed.generate}") long rows) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.rows = rows;
+    }
+
+    @Override
+    public void run(String... args) {
+        if (rows <= 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        Map<String, Object> existing = jdbcTemplate.queryForMap(
+                "select count(*) employees, min(id) first_id, max(id) last_id from employee where deleted = false");
+        if (((Number) existing.get("employees")).longValue() >= rows) {
+            this.firstId = ((Number) existing.get("first_id")).longValue();
+            this.lastId = ((Number) existing.get("last_id")).longValue();
+            log.info("Found {} employees (ids {} to {}), generating none", existing.get("employees"), firstId, lastId);
+            return;
+        }
+        // every id up to the value just taken (and the block behind it) belongs to employee_seq already
+        long first = jdbcTemplate.queryForObject("select next value for employee_seq", Long.class) + ID_BLOCK;
+        long last = first + rows - 1;
+        Map<String, String> indexes = new LinkedHashMap<>();
+        jdbcTemplate.query("select distinct index_name, sql from information_schema.indexes "
+                        + "where table_name = 'EMPLOYEE' and primary_key = false and constraint_name is null",
+                (RowCallbackHandler) rs -> indexes.put(rs.getString("index_name"), rs.getString("sql")));
+        // a failed chunk must not leave the table without its indexes, only the dropped ones are built again
+        List<String> dropped = new ArrayList<>();
+        try {
+            for (Map.Entry<String, String> index : indexes.entrySet()) {
+                jdbcTemplate.execute("drop index \"" + index.getKey() + "\"");
+                dropped.add(index.getValue());
+            }
+            for (long from = first; from <= last; from += ROWS_PER_STATEMENT) {
+                Object[] parameters = {FIRST_NAMES, FIRST_NAMES.length, LAST_NAMES, FIRST_NAMES.length, LAST_NAMES.length,
+                        ROLES, ROLES.length, from, Math.min(from + ROWS_PER_STATEMENT - 1, last)};
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.update(INSERT, parameters));
+            }
+        } finally {
+            dropped.forEach(jdbcTemplate::execute);
+        }
+        jdbcTemplate.execute("alter sequence employee_seq restart with " + (last + 1 + ID_BLOCK));
+        this.firstId = first;
+        this.lastId = last;
+        log.info("Generated {} employees (ids {} to {}) in {} ms", rows, first, last, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    // the range of generated ids, both 0 before the run
+    public long getFirstId() {
+        return this.firstId;
+    }
+
+    public long getLastId() {
+        return this.lastId;
+    }
+}
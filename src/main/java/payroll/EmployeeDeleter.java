@@ -0,0 +1,69 @@
+package payroll;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * Deletes employees by id with one DELETE (or, with payroll.delete.soft=true, one UPDATE setting the deleted flag)
+ * per payroll.bulk.chunk-size ids, all in a single transaction. Nothing is read first and unknown ids are simply not
+ * counted, so deleting is idempotent.
+ * <p>
+ * The cached copies are evicted and a DELETED event is published per id once the transaction committed. The
+ * statements only report how many rows they hit, not which, so when only some of the ids existed every id gets an
+ * event; for consumers a DELETED event means "this id doesn't exist (anymore)".
+ **/
+@Component
+public class EmployeeDeleter {
+    private final EmployeeRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher events;
+    private final Cache cache;
+    private final boolean soft;
+    private final int chunkSize;
+
+    public EmployeeDeleter(EmployeeRepository repository, PlatformTransactionManager transactionManager,
+                           ApplicationEventPublisher events, CacheManager cacheManager,
+                           @Value("${payroll.delete.soft:false}") boolean soft,
+                           @Value("${payroll.bulk.chunk-size:1000}") int chunkSize) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.events = events;
+        this.cache = cacheManager.getCache(EmployeeRepository.EMPLOYEE_CACHE);
+        this.soft = soft;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    // returns how many of the employees existed and are deleted now
+    public int delete(Collection<Long> ids) {
+        List<Long> distinct = ids.stream().filter(Objects::nonNull).distinct().collect(Collectors.toList());
+        if (distinct.isEmpty()) {
+            return 0;
+        }
+        Integer deleted = transactionTemplate.execute(status -> {
+            int count = 0;
+            for (int from = 0; from < distinct.size(); from += chunkSize) {
+                List<Long> chunk = distinct.subList(from, Math.min(from + chunkSize, distinct.size()));
+                count += soft ? repository.softDeleteAllByIds(chunk) : repository.deleteAllByIds(chunk);
+            }
+            if (count > 0) {
+                // delivered after commit, see EmployeeChangeStream
+                distinct.forEach(id -> events.publishEvent(EmployeeChangeEvent.deleted(id)));
+            }
+            return count;
+        });
+        if (cache != null) {
+            distinct.forEach(cache::evict);
+        }
+        return deleted == null ? 0 : deleted;
+    }
+}
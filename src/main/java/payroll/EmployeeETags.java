@@ -0,0 +1,92 @@
+package payroll;
+
+import org.springframework.hateoas.CollectionModel;
+import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.Link;
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ETags of employee representations, derived from the @Version column instead of hashing the serialized body:
+ * <p>
+ * a single employee gets a strong ETag, its version, since PUT's If-Match needs the strong comparison. Tomcat doesn't
+ * gzip responses with a strong ETag, which leaves the bytes of each tag alone; single employees are below the
+ * compression threshold anyway.
+ * <p>
+ * a collection (or page) gets a weak ETag, a hash over the id and version of every employee it contains plus its
+ * own links, so any create, update or delete of a listed employee, and any change of the paging links, yields a new
+ * tag. Weak, because the same tag stands for the gzipped and the plain bytes; If-None-Match compares weakly.
+ * <p>
+ * The CBOR representation is another document than the HAL JSON one, so its tags carry a suffix ("3-cbor"); a
+ * cached JSON body is never confirmed by a 304 to a CBOR request or the other way around.
+ * <p>
+ * Rows without a version (inserted behind JPA's back) get no ETag at all.
+ **/
+final class EmployeeETags {
+
+    private EmployeeETags() {
+    }
+
+    private static final String CBOR_SUFFIX = "-cbor";
+    private static final MediaType APPLICATION_CBOR = MediaType.parseMediaType("application/cbor");
+
+    static String of(Employee employee, MediaType contentType) {
+        if (employee.getVersion() == null) {
+            return null;
+        }
+        return "\"" + employee.getVersion() + suffix(contentType) + "\"";
+    }
+
+    static String of(CollectionModel<?> collection, MediaType contentType) {
+        long hash = 1125899906842597L;
+        for (Object element : collection.getContent()) {
+            if (!(element instanceof EntityModel) || !(((EntityModel<?>) element).getContent() instanceof Employee)) {
+                return null;
+            }
+            Employee employee = (Employee) ((EntityModel<?>) element).getContent();
+            if (employee.getId() == null || employee.getVersion() == null) {
+                return null;
+            }
+            hash = 31 * hash + employee.getId();
+            hash = 31 * hash + employee.getVersion();
+        }
+        for (Link link : collection.getLinks()) {
+            hash = 31 * hash + link.getRel().value().hashCode();
+            hash = 31 * hash + link.getHref().hashCode();
+        }
+        return "W/\"" + Long.toHexString(hash) + suffix(contentType) + "\"";
+    }
+
+    private static String suffix(MediaType contentType) {
+        return contentType != null && APPLICATION_CBOR.isCompatibleWith(contentType) ? CBOR_SUFFIX : "";
+    }
+
+    /**
+     * The versions an If-Match header value accepts, for the conditional UPDATE of PUT: null for "*" (any existing
+     * employee), otherwise the versions in the listed tags, of any representation. Weak tags (W/"..") never match,
+     * If-Match requires the strong comparison, and neither do tags that aren't employee versions.
+     **/
+    static List<Long> versions(String ifMatch) {
+        List<Long> versions = new ArrayList<>();
+        for (String candidate : ifMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*")) {
+                return null;
+            }
+            if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+                String opaque = tag.substring(1, tag.length() - 1);
+                if (opaque.endsWith(CBOR_SUFFIX)) {
+                    opaque = opaque.substring(0, opaque.length() - CBOR_SUFFIX.length());
+                }
+                try {
+                    versions.add(Long.parseLong(opaque));
+                } catch (NumberFormatException ex) {
+                    // not one of ours
+                }
+            }
+        }
+        return versions;
+    }
+}
@@ -0,0 +1,54 @@
+package payroll;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Writes the full roster as newline-delimited JSON (one Employee object per line).
+ * <p>
+ * Employees are pulled from a cursor-backed Stream and detached from the persistence context as soon as they are
+ * written, so neither the result list nor the first-level cache grows with the table; heap use stays constant
+ * whether there are two rows or two million.
+ **/
+@Component
+public class EmployeeExporter {
+    private final EmployeeRepository repository;
+    private final EntityManager entityManager;
+    private final ObjectWriter writer;
+
+    public EmployeeExporter(EmployeeRepository repository, EntityManager entityManager, ObjectMapper objectMapper) {
+        this.repository = repository;
+        this.entityManager = entityManager;
+        // we flush once per fetched chunk ourselves, not after every single row
+        this.writer = objectMapper.writerFor(Employee.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    // the Stream needs an open transaction (and connection) for as long as it is being consumed
+    @Transactional(readOnly = true)
+    public void export(OutputStream out) throws IOException {
+        try (Stream<Employee> employees = repository.streamAll();
+             JsonGenerator generator = writer.getFactory().createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            int written = 0;
+            for (Iterator<Employee> it = employees.iterator(); it.hasNext(); ) {
+                Employee employee = it.next();
+                writer.writeValue(generator, employee);
+                generator.writeRaw('\n');
+                entityManager.detach(employee);
+                if (++written % EmployeeRepository.EXPORT_FETCH_SIZE == 0) {
+                    generator.flush();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package payroll;
+
+import com.fasterxml.jackson.annotation.JsonAnyGetter;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.springframework.hateoas.server.core.Relation;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Sparse fieldset of one employee, what GET /employees?fields=... and GET /employees/{id}?fields=... return instead of
+ * the full Employee. Only the requested columns are selected from the database (see EmployeeSearchRepositoryImpl),
+ * no entity is created or dirty-checked, and only the requested properties are serialized.
+ * <p>
+ * The relation names are the ones of Employee, so the HAL document keeps its _embedded.employeeList shape.
+ **/
+@Relation(itemRelation = "employee", collectionRelation = "employeeList")
+public class EmployeeFields {
+    // every field a client can ask for, in the order Employee itself is serialized
+    static final List<String> NAMES = Collections.unmodifiableList(Arrays.asList("id", "role", "firstName", "lastName", "name"));
+
+    private final Long id;
+    private final Map<String, Object> values;
+
+    EmployeeFields(Long id, Map<String, Object> values) {
+        this.id = id;
+        this.values = values;
+    }
+
+    /**
+     * Parses a comma separated fields parameter into the requested field names, in serialization order.
+     * Unknown names are rejected with an UnknownEmployeeFieldException.
+     **/
+    static Set<String> parse(String fields) {
+        Set<String> requested = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!NAMES.contains(name)) {
+                throw new UnknownEmployeeFieldException(name);
+            }
+            requested.add(name);
+        }
+        Set<String> ordered = new LinkedHashSet<>();
+        for (String name : NAMES) {
+            if (requested.contains(name)) {
+                ordered.add(name);
+            }
+        }
+        return ordered;
+    }
+
+    // the id is always loaded for the self link, even when it isn't one of the requested fields
+    @JsonIgnore
+    public Long getId() {
+        return this.id;
+    }
+
+    @JsonAnyGetter
+    public Map<String, Object> getValues() {
+        return this.values;
+    }
+
+    static Map<String, Object> newValues(int size) {
+        return new LinkedHashMap<>(size * 2);
+    }
+}
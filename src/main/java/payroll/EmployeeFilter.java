@@ -0,0 +1,38 @@
+package payroll;
+
+/**
+ * Server side filter of the paged GET /employees: an exact role and/or prefixes of the first and last name.
+ * Fields that are null (or blank) don't filter at all.
+ **/
+public class EmployeeFilter {
+    // matches every employee
+    static final EmployeeFilter NONE = new EmployeeFilter(null, null, null);
+
+    private final String role;
+    private final String firstName;
+    private final String lastName;
+
+    public EmployeeFilter(String role, String firstName, String lastName) {
+        this.role = emptyToNull(role);
+        this.firstName = emptyToNull(firstName);
+        this.lastName = emptyToNull(lastName);
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+
+    public String getRole() {
+        return this.role;
+    }
+
+    // prefix the first name has to start with
+    public String getFirstName() {
+        return this.firstName;
+    }
+
+    // prefix the last name has to start with
+    public String getLastName() {
+        return this.lastName;
+    }
+}
@@ -0,0 +1,32 @@
+package payroll;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Body of GET /employees/aggregates: the number of employees, per role (employees without a role only count in the
+ * total) and when the counters were last reconciled with the database.
+ **/
+public class EmployeeHeadcount {
+    private final long total;
+    private final Map<String, Long> roles;
+    private final Instant reconciledAt;
+
+    EmployeeHeadcount(long total, Map<String, Long> roles, Instant reconciledAt) {
+        this.total = total;
+        this.roles = roles;
+        this.reconciledAt = reconciledAt;
+    }
+
+    public long getTotal() {
+        return this.total;
+    }
+
+    public Map<String, Long> getRoles() {
+        return this.roles;
+    }
+
+    public Instant getReconciledAt() {
+        return this.reconciledAt;
+    }
+}
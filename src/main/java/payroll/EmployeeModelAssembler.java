@@ -2,9 +2,22 @@ package payroll;
 
 import static org.springframework.hateoas.server.mvc.WebMvcLinkBuilder.*;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import io.micrometer.core.annotation.Timed;
+import org.springframework.hateoas.CollectionModel;
 import org.springframework.hateoas.EntityModel;
+import org.springframework.hateoas.IanaLinkRelations;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.LinkRelation;
 import org.springframework.hateoas.server.RepresentationModelAssembler;
 import org.springframework.stereotype.Component;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.web.util.UriComponentsBuilder;
 
 /**
  * This simple interface has one method: toModel().
@@ -14,10 +27,121 @@ import org.springframework.stereotype.Component;
  **/
 @Component
 public class EmployeeModelAssembler implements RepresentationModelAssembler<Employee, EntityModel<Employee>> {
+    // linkTo(controller, method, parameters) reads the same request mappings as linkTo(methodOn(...)) without proxying
+    // the controller and recording an invocation for every link.
+    private static final Method ONE = ReflectionUtils.findMethod(EmployeeController.class, "one", Long.class);
+    private static final Method ALL = ReflectionUtils.findMethod(EmployeeController.class, "all");
+
     @Override
+    @Timed(value = "payroll.assembler", extraTags = {"operation", "toModel"})
     public EntityModel<Employee> toModel(Employee employee) {
-        return EntityModel.of(employee,
-                linkTo(methodOn(EmployeeController.class).one(employee.getId())).withSelfRel(),
-                linkTo(methodOn(EmployeeController.class).all()).withRel("employees"));
+        if (employee.getId() == null) {
+            // not stored yet, let Spring HATEOAS render the {id} template as it always did
+            return EntityModel.of(employee,
+                    linkTo(EmployeeController.class, ONE, employee.getId()).withSelfRel(),
+                    linkTo(EmployeeController.class, ALL).withRel("employees"));
+        }
+        return linkTemplates().toModel(employee);
+    }
+
+    // a sparse fieldset gets the same links as the full employee
+    @Timed(value = "payroll.assembler", extraTags = {"operation", "toModel"})
+    public EntityModel<EmployeeFields> toModel(EmployeeFields fields) {
+        return linkTemplates().toModel(fields, fields.getId());
+    }
+
+    /**
+     * linkTo(...) goes through a full URI build (and originally a proxy invocation) for every single link, which dominates
+     * the cost of large collection responses. The base URI only depends on the current request (host, context path,
+     * forwarded headers), so it is resolved once here and every employee of the response gets its links by appending
+     * the id; the hrefs are exactly the ones linkTo(EmployeeController.class, ONE, id) would produce.
+     * The result is only valid for the request it was created in, don't keep it around.
+     **/
+    public LinkTemplates linkTemplates() {
+        return new LinkTemplates(linkTo(EmployeeController.class, ALL).withRel("employees"));
+    }
+
+    public static final class LinkTemplates {
+        private final Link employees;
+        private final String selfPrefix;
+
+        private LinkTemplates(Link employees) {
+            this.employees = employees;
+            this.selfPrefix = employees.getHref() + "/";
+        }
+
+        // the aggregate root link, withSelfRel() of it is the self link of the full collection
+        public Link employees() {
+            return this.employees;
+        }
+
+        public EntityModel<Employee> toModel(Employee employee) {
+            return toModel(employee, employee.getId());
+        }
+
+        // any representation of the employee with that id, e.g. an EmployeeFields
+        public <T> EntityModel<T> toModel(T content, Long id) {
+            return EntityModel.of(content, Link.of(this.selfPrefix + id), this.employees);
+        }
+    }
+
+    // the aggregate root: every employee plus a self link to the collection
+    @Override
+    @Timed(value = "payroll.assembler", extraTags = {"operation", "toCollectionModel"})
+    public CollectionModel<EntityModel<Employee>> toCollectionModel(Iterable<? extends Employee> employees) {
+        LinkTemplates links = linkTemplates();
+        List<EntityModel<Employee>> content = new ArrayList<>();
+        for (Employee employee : employees) {
+            content.add(links.toModel(employee));
+        }
+        return CollectionModel.of(content, links.employees().withSelfRel());
+    }
+
+    /**
+     * Wraps one keyset page. Besides the self link, a next link (after = last id on the page) and a prev link
+     * (before = first id on the page) are only added when there is something to walk to in that direction.
+     * All of them repeat the filter and the fields (null for full employees), so walking the pages stays within the
+     * filtered result and keeps the same representation.
+     * The page holds either Employees or EmployeeFields, idOf reads the id the links are built from.
+     **/
+    @Timed(value = "payroll.assembler", extraTags = {"operation", "toKeysetModel"})
+    public <T> CollectionModel<EntityModel<T>> toKeysetModel(List<T> employees, Function<? super T, Long> idOf, EmployeeFilter filter,
+                                                             String fields, Long after, Long before, int size, boolean hasPrev, boolean hasNext) {
+        LinkTemplates links = linkTemplates();
+        List<EntityModel<T>> content = employees.stream().map(employee -> links.toModel(employee, idOf.apply(employee))).collect(Collectors.toList());
+        CollectionModel<EntityModel<T>> model = CollectionModel.of(content, pageLink(links, filter, fields, after, before, size, IanaLinkRelations.SELF));
+        if (!employees.isEmpty()) {
+            if (hasNext) {
+                model.add(pageLink(links, filter, fields, idOf.apply(employees.get(employees.size() - 1)), null, size, IanaLinkRelations.NEXT));
+            }
+            if (hasPrev) {
+                model.add(pageLink(links, filter, fields, null, idOf.apply(employees.get(0)), size, IanaLinkRelations.PREV));
+            }
+        }
+        return model;
+    }
+
+    // /employees?[filter&][fields&]after=..&size=.. or /employees?[filter&][fields&]before=..&size=.., unset parameters are left out
+    private Link pageLink(LinkTemplates links, EmployeeFilter filter, String fields, Long after, Long before, int size, LinkRelation rel) {
+        UriComponentsBuilder uri = UriComponentsBuilder.fromUriString(links.employees().getHref());
+        if (filter.getRole() != null) {
+            uri.queryParam("role", filter.getRole());
+        }
+        if (filter.getFirstName() != null) {
+            uri.queryParam("firstName", filter.getFirstName());
+        }
+        if (filter.getLastName() != null) {
+            uri.queryParam("lastName", filter.getLastName());
+        }
+        if (fields != null) {
+            uri.queryParam("fields", fields);
+        }
+        if (after != null) {
+            uri.queryParam("after", after);
+        }
+        if (before != null) {
+            uri.queryParam("before", before);
+        }
+        return Link.of(uri.queryParam("size", size).toUriString(), rel);
     }
 }
@@ -0,0 +1,7 @@
+package payroll;
+
+public class EmployeePreconditionFailedException extends RuntimeException {
+    EmployeePreconditionFailedException(Long id) {
+        super("Employee with id: " + id + " does not match the If-Match precondition");
+    }
+}
@@ -2,11 +2,24 @@ package payroll;
 
 
 import com.sun.xml.bind.v2.model.core.ID;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 import payroll.Employee;
 
+import javax.persistence.QueryHint;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 /**
  * Spring Data JPA repositories are interfaces with methods supporting
@@ -27,24 +40,81 @@ import java.util.Optional;
  **/
 //To get all this free functionality, all we had to do was declare an interface which extends Spring Data JPA’s JpaRepository,
 //specifying the domain type as Employee and the id type as Long.
-public interface EmployeeRepository extends JpaRepository<Employee, Long> {
-    // saving employee
+//EmployeeSearchRepository adds the filtered keyset search, implemented by hand in EmployeeSearchRepositoryImpl,
+//EmployeeUpsertRepository the single statement writes of PUT, in EmployeeUpsertRepositoryImpl.
+public interface EmployeeRepository extends JpaRepository<Employee, Long>, EmployeeSearchRepository, EmployeeUpsertRepository {
+    // rows fetched per JDBC round trip when streaming the whole roster
+    int EXPORT_FETCH_SIZE = 1000;
+
+    // name of the Spring cache holding single employees by id (sized and timed by spring.cache.caffeine.spec)
+    String EMPLOYEE_CACHE = "employees";
+
+    // saving employee, the cached copy (if any) is dropped once the write went through
+    @CacheEvict(cacheNames = EMPLOYEE_CACHE, key = "#p0.id")
     Employee save(Employee employee);
 
+    // PUT writes, see EmployeeUpsertRepository; like save they drop the cached copy
+    @Override
+    @CacheEvict(cacheNames = EMPLOYEE_CACHE, key = "#p0")
+    Employee upsert(Long id, Employee employee);
+
+    @Override
+    @CacheEvict(cacheNames = EMPLOYEE_CACHE, key = "#p0")
+    Optional<Employee> updateIfVersion(Long id, Employee employee, Collection<Long> versions);
+
     //find employee by id
     Optional<Employee> findById(ID primaryKey);
 
+    // read-through lookup for the hot GET /employees/{id} path: a hit never reaches the transaction or the database.
+    // Only use it for read-only rendering, the returned instance is shared and must not be modified.
+    @Cacheable(cacheNames = EMPLOYEE_CACHE, unless = "#result == null")
+    default Optional<Employee> findCachedById(Long id) {
+        return findById(id);
+    }
+
     // find all employees
     List<Employee> findAll();
 
     // count number of employee
     long count();
 
+    // headcount per role, to load the counters of the EmployeeAggregates
+    @Query("select e.role as role, count(e) as headcount from Employee e group by e.role")
+    List<RoleHeadcount> headcountByRole();
+
     // delete employee
+    @CacheEvict(cacheNames = EMPLOYEE_CACHE, key = "#p0.id")
     void delete(Employee employee);
 
+    // delete employee by id
+    @CacheEvict(cacheNames = EMPLOYEE_CACHE, key = "#p0")
+    void deleteById(Long id);
+
+    // single statement deletes used by the EmployeeDeleter: no SELECT of the entities first, ids that don't exist are
+    // no error; both return the number of employees hit and leave the cache to the caller
+    @Modifying
+    @Transactional
+    @Query("delete from Employee e where e.id in :ids")
+    int deleteAllByIds(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Transactional
+    @Query("update Employee e set e.deleted = true, e.version = e.version + 1 where e.id in :ids and e.deleted = false")
+    int softDeleteAllByIds(@Param("ids") Collection<Long> ids);
+
+    // partial-column update for the EmployeeRoleWriter: one statement for all the ids that get the same role
+    @Modifying
+    @Transactional
+    @Query("update Employee e set e.role = :role, e.version = e.version + 1 where e.id in :ids and e.deleted = false")
+    int updateRoleByIds(@Param("role") String role, @Param("ids") Collection<Long> ids);
+
     // checking if employee exists by id
     boolean existsById(ID primaryKey);
 
+    // stream every employee in id order, rows are pulled from the JDBC cursor in chunks of EXPORT_FETCH_SIZE
+    // instead of materializing the whole result list; must be consumed inside a transaction and closed afterwards
+    @QueryHints({@QueryHint(name = HINT_FETCH_SIZE, value = "" + EXPORT_FETCH_SIZE), @QueryHint(name = HINT_READONLY, value = "true")})
+    @Query("select e from Employee e order by e.id")
+    Stream<Employee> streamAll();
 
 }
@@ -0,0 +1,46 @@
+package payroll;
+
+import org.springframework.beans.factory.DisposableBean;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The bounded worker pool employee requests run on with payroll.execution.async=true, see AsyncExecutionFilter.
+ * <p>
+ * The pool has as many threads as the datasource has connections, so no worker ever waits for a connection, and a
+ * bounded queue in front of it. When the queue is full the request is rejected right away (503 + Retry-After)
+ * instead of piling up threads or requests without limit.
+ **/
+public class EmployeeRequestExecutor implements DisposableBean {
+    private final ThreadPoolExecutor executor;
+
+    // threads should match the connection pool size
+    EmployeeRequestExecutor(int threads, int queueCapacity) {
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "payroll-request-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    ThreadPoolExecutor getExecutor() {
+        return this.executor;
+    }
+
+    // throws RejectedExecutionException when the workers are busy and the queue is full
+    public void execute(Runnable work) {
+        this.executor.execute(work);
+    }
+
+    @Override
+    public void destroy() {
+        this.executor.shutdown();
+    }
+}
@@ -0,0 +1,238 @@
+package payroll;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Writes the role only updates of PUT /employees/{id}/role.
+ * <p>
+ * By default every update is written right away. With payroll.writes.coalesce.enabled=true they are buffered per id
+ * instead, a later role for the same id replaces the buffered one, and a "payroll-write-behind" thread writes the
+ * buffer every payroll.writes.coalesce.interval-ms, or as soon as it holds payroll.writes.coalesce.max-pending ids.
+ * A flush is one transaction with one partial-column UPDATE per distinct role (a reorganization moves many
+ * employees to the same few roles) and one SELECT of the updated employees for the UPDATED change events.
+ * <p>
+ * payroll.writes.coalesce.ack decides when the client hears back: FLUSHED (default) once the role is committed,
+ * BUFFERED as soon as it is in the buffer. Updates acknowledged as BUFFERED are lost if the process dies before the
+ * next flush; a regular shutdown still writes them.
+ * <p>
+ * A full PUT /employees/{id} goes through replace(): it drops the role still buffered for the id (its senders hear
+ * SUPERSEDED) and waits for a flush in progress, so a role taken by that flush can't commit after the PUT's write.
+ **/
+@Component
+public class EmployeeRoleWriter implements DisposableBean {
+    private static final Logger log = LoggerFactory.getLogger(EmployeeRoleWriter.class);
+
+    public enum Ack {
+        BUFFERED, FLUSHED
+    }
+
+    // what became of a role update
+    public enum Result {
+        WRITTEN,
+        // no such employee
+        NOT_FOUND,
+        // dropped from the buffer unwritten, a PUT of the whole employee came after it
+        SUPERSEDED
+    }
+
+    // the latest role for an id that isn't written yet, only changed inside the map's compute, and the future all
+    // senders of a role for that id wait on
+    private static final class Pending {
+        private String role;
+        private final CompletableFuture<Result> written = new CompletableFuture<>();
+    }
+
+    private final EmployeeRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final ApplicationEventPublisher events;
+    private final Cache cache;
+    private final boolean coalesce;
+    private final Ack ack;
+    private final int maxPending;
+    private final ConcurrentHashMap<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    // write lock: a flush, from taking the buffer until it is committed; read lock: the PUTs going through replace()
+    private final ReadWriteLock flushLock = new ReentrantReadWriteLock();
+    // set by destroy(), updates arriving afterwards are written by their own thread
+    private volatile boolean closed;
+    private final ScheduledExecutorService flusher;
+    private final Counter received;
+    private final Counter written;
+
+    public EmployeeRoleWriter(EmployeeRepository repository, PlatformTransactionManager transactionManager,
+                              ApplicationEventPublisher events, CacheManager cacheManager, MeterRegistry registry,
+                              @Value("${payroll.writes.coalesce.enabled:false}") boolean coalesce,
+                              @Value("${payroll.writes.coalesce.interval-ms:50}") long intervalMillis,
+                              @Value("${payroll.writes.coalesce.max-pending:1000}") int maxPending,
+                              @Value("${payroll.writes.coalesce.ack:FLUSHED}") Ack ack) {
+        this.repository = repository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.events = events;
+        this.cache = cacheManager.getCache(EmployeeRepository.EMPLOYEE_CACHE);
+        this.coalesce = coalesce;
+        this.ack = ack;
+        this.maxPending = Math.max(1, maxPending);
+        this.received = Counter.builder("payroll.writes.coalesce.received")
+                .description("Role updates received")
+                .register(registry);
+        this.written = Counter.builder("payroll.writes.coalesce.written")
+                .description("Employee rows written by role updates")
+                .register(registry);
+        Gauge.builder("payroll.writes.coalesce.pending", pending, Map::size)
+                .description("Employees with a buffered role update")
+                .register(registry);
+        if (coalesce) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "payroll-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = Math.max(1, intervalMillis);
+            this.flusher.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+
+    // the client is answered before the role is written
+    public boolean acknowledgesBuffered() {
+        return this.coalesce && this.ack == Ack.BUFFERED;
+    }
+
+    // completes once the role is committed (or the employee turned out not to exist, or a PUT superseded it)
+    public CompletableFuture<Result> update(Long id, String role) {
+        received.increment();
+        if (!coalesce) {
+            Pending single = new Pending();
+            single.role = role;
+            write(Collections.singletonMap(id, single));
+            return single.written;
+        }
+        Pending merged = pending.compute(id, (key, current) -> {
+            Pending next = current == null ? new Pending() : current;
+            next.role = role;
+            return next;
+        });
+        if (closed) {
+            // destroy() may have taken its last flush before this role was buffered
+            flush();
+        } else if (pending.size() >= maxPending && flushRequested.compareAndSet(false, true)) {
+            try {
+                flusher.execute(this::flush);
+            } catch (RejectedExecutionException ex) {
+                // shut down in the meantime
+                flush();
+            }
+        }
+        return merged.written;
+    }
+
+    /**
+     * Runs the write of a whole employee (PUT /employees/{id}), which replaces any role sent for it before: a role
+     * still buffered for the id is dropped, and the write waits for a flush in progress, which may hold one already.
+     * Roles sent while the write runs are buffered and flushed after it.
+     **/
+    public <T> T replace(Long id, Supplier<T> write) {
+        if (!coalesce) {
+            return write.get();
+        }
+        flushLock.readLock().lock();
+        try {
+            Pending superseded = pending.remove(id);
+            if (superseded != null) {
+                superseded.written.complete(Result.SUPERSEDED);
+            }
+            return write.get();
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    private void flush() {
+        flushRequested.set(false);
+        flushLock.writeLock().lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            Map<Long, Pending> batch = new HashMap<>();
+            for (Long id : pending.keySet()) {
+                Pending next = pending.remove(id);
+                if (next != null) {
+                    batch.put(id, next);
+                }
+            }
+            write(batch);
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    private void write(Map<Long, Pending> batch) {
+        Set<Long> found;
+        try {
+            found = transactionTemplate.execute(status -> {
+                Map<String, List<Long>> idsByRole = new HashMap<>();
+                batch.forEach((id, next) -> idsByRole.computeIfAbsent(next.role, role -> new ArrayList<>()).add(id));
+                idsByRole.forEach(repository::updateRoleByIds);
+                Set<Long> updated = new HashSet<>();
+                for (Employee employee : repository.findAllById(batch.keySet())) {
+                    updated.add(employee.getId());
+                    // delivered after commit, see EmployeeChangeStream
+                    events.publishEvent(EmployeeChangeEvent.updated(employee));
+                }
+                return updated;
+            });
+        } catch (RuntimeException ex) {
+            log.warn("Writing {} role updates failed", batch.size(), ex);
+            batch.values().forEach(next -> next.written.completeExceptionally(ex));
+            return;
+        }
+        if (cache != null) {
+            batch.keySet().forEach(cache::evict);
+        }
+        written.increment(found.size());
+        batch.forEach((id, next) -> next.written.complete(found.contains(id) ? Result.WRITTEN : Result.NOT_FOUND));
+    }
+
+    // writes what is still buffered before the repository goes away
+    @Override
+    public void destroy() throws InterruptedException {
+        if (flusher != null) {
+            closed = true;
+            flusher.shutdown();
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+            flush();
+        }
+    }
+}
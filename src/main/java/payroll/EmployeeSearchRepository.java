@@ -0,0 +1,22 @@
+package payroll;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Custom Spring Data fragment of EmployeeRepository, implemented by EmployeeSearchRepositoryImpl.
+ * Spring Data plugs it in by naming convention: the Impl class next to the fragment interface.
+ **/
+public interface EmployeeSearchRepository {
+
+    // one keyset page of employees matching the filter: at most limit rows with id > after in ascending id order,
+    // or with before set, the rows with id < before in descending id order
+    List<Employee> search(EmployeeFilter filter, Long after, Long before, int limit);
+
+    // the same page as search(), but only the requested fields (see EmployeeFields.NAMES) are selected
+    List<EmployeeFields> searchFields(EmployeeFilter filter, Long after, Long before, int limit, Set<String> fields);
+
+    // a single employee reduced to the requested fields
+    Optional<EmployeeFields> findFieldsById(Long id, Set<String> fields);
+}
@@ -0,0 +1,154 @@
+package payroll;
+
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Tuple;
+import javax.persistence.criteria.CriteriaBuilder;
+import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Path;
+import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
+import javax.persistence.criteria.Selection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Builds the search query from only those conditions that are actually set, instead of one JPQL string with
+ * "(:role is null or e.role = :role)" style conditions, which keep the database from using the indexes.
+ * role = ? and id > ? is a seek on idx_employee_role, a name prefix becomes last_name like 'Bag%', a range
+ * scan on idx_employee_last_name.
+ **/
+class EmployeeSearchRepositoryImpl implements EmployeeSearchRepository {
+    private static final char LIKE_ESCAPE = '\\';
+
+    private final EntityManager entityManager;
+
+    EmployeeSearchRepositoryImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<Employee> search(EmployeeFilter filter, Long after, Long before, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Employee> query = cb.createQuery(Employee.class);
+        Root<Employee> employee = query.from(Employee.class);
+        restrict(cb, query, employee, filter, after, before);
+
+        return entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+    }
+
+    /**
+     * Selects only the columns behind the requested fields as a Tuple instead of whole entities, so nothing is
+     * hydrated into the persistence context (no entity instance, no dirty-checking snapshot) and the rows get
+     * narrower. The id is always selected for the self link, name is put together from firstName and lastName.
+     **/
+    @Override
+    @Transactional(readOnly = true)
+    public List<EmployeeFields> searchFields(EmployeeFilter filter, Long after, Long before, int limit, Set<String> fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Employee> employee = query.from(Employee.class);
+        query.multiselect(columns(employee, fields));
+        restrict(cb, query, employee, filter, after, before);
+
+        List<Tuple> rows = entityManager.createQuery(query)
+                .setMaxResults(limit)
+                .getResultList();
+        List<EmployeeFields> result = new ArrayList<>(rows.size());
+        for (Tuple row : rows) {
+            result.add(toFields(row, fields));
+        }
+        return result;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<EmployeeFields> findFieldsById(Long id, Set<String> fields) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Tuple> query = cb.createTupleQuery();
+        Root<Employee> employee = query.from(Employee.class);
+        query.multiselect(columns(employee, fields));
+        query.where(cb.equal(employee.get("id"), id));
+
+        return entityManager.createQuery(query)
+                .getResultStream()
+                .findFirst()
+                .map(row -> toFields(row, fields));
+    }
+
+    // the conditions that are set, plus the order matching the direction of the keyset cursor
+    private static void restrict(CriteriaBuilder cb, CriteriaQuery<?> query, Root<Employee> employee,
+                                 EmployeeFilter filter, Long after, Long before) {
+        Path<Long> id = employee.get("id");
+
+        List<Predicate> where = new ArrayList<>();
+        if (filter.getRole() != null) {
+            where.add(cb.equal(employee.get("role"), filter.getRole()));
+        }
+        if (filter.getFirstName() != null) {
+            where.add(cb.like(employee.get("firstName"), likePrefix(filter.getFirstName()), LIKE_ESCAPE));
+        }
+        if (filter.getLastName() != null) {
+            where.add(cb.like(employee.get("lastName"), likePrefix(filter.getLastName()), LIKE_ESCAPE));
+        }
+        if (before != null) {
+            where.add(cb.lessThan(id, before));
+            query.orderBy(cb.desc(id));
+        } else {
+            if (after != null) {
+                where.add(cb.greaterThan(id, after));
+            }
+            query.orderBy(cb.asc(id));
+        }
+        query.where(where.toArray(new Predicate[0]));
+    }
+
+    private static List<Selection<?>> columns(Root<Employee> employee, Set<String> fields) {
+        boolean name = fields.contains("name");
+        List<Selection<?>> columns = new ArrayList<>(4);
+        columns.add(employee.get("id").alias("id"));
+        if (fields.contains("role")) {
+            columns.add(employee.get("role").alias("role"));
+        }
+        if (name || fields.contains("firstName")) {
+            columns.add(employee.get("firstName").alias("firstName"));
+        }
+        if (name || fields.contains("lastName")) {
+            columns.add(employee.get("lastName").alias("lastName"));
+        }
+        return columns;
+    }
+
+    private static EmployeeFields toFields(Tuple row, Set<String> fields) {
+        Map<String, Object> values = EmployeeFields.newValues(fields.size());
+        for (String field : fields) {
+            if (field.equals("name")) {
+                // same value as Employee.getName()
+                values.put(field, Employee.composeName(row.get("firstName", String.class), row.get("lastName", String.class)));
+            } else {
+                values.put(field, row.get(field));
+            }
+        }
+        return new EmployeeFields(row.get("id", Long.class), values);
+    }
+
+    // the prefix is matched literally, % and _ typed by the user are no wildcards
+    private static String likePrefix(String prefix) {
+        StringBuilder pattern = new StringBuilder(prefix.length() + 1);
+        for (int i = 0; i < prefix.length(); i++) {
+            char c = prefix.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                pattern.append(LIKE_ESCAPE);
+            }
+            pattern.append(c);
+        }
+        return pattern.append('%').toString();
+    }
+}
@@ -0,0 +1,19 @@
+package payroll;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Custom Spring Data fragment of EmployeeRepository with the single statement writes of PUT /employees/{id},
+ * implemented by EmployeeUpsertRepositoryImpl.
+ **/
+public interface EmployeeUpsertRepository {
+
+    // replaces the names and role of the employee, or creates it (with an id of its own) when there is none yet;
+    // the returned employee carries the id and version that were written
+    Employee upsert(Long id, Employee employee);
+
+    // replaces the names and role only while the employee has one of the versions (any version when null),
+    // empty when no employee matched
+    Optional<Employee> updateIfVersion(Long id, Employee employee, Collection<Long> versions);
+}
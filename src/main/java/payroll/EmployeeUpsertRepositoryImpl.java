@@ -0,0 +1,90 @@
+package payroll;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * One statement per PUT instead of findById, changing the managed entity and flushing it (plus the merge() SELECT
+ * when the employee didn't exist): a SQL MERGE that updates the row or inserts a new one, atomically, and hands the
+ * written id and version back as generated keys, so nothing has to be read before or after.
+ * <p>
+ * MERGE ... USING ... WHEN MATCHED / WHEN NOT MATCHED is the SQL:2003 form, as H2 runs it (Oracle, SQL Server and
+ * DB2 take the same statement); a database without it, like MySQL, would need its own INSERT ... ON DUPLICATE KEY.
+ * <p>
+ * A new employee takes its id from employee_seq like JPA does, so the ids Hibernate still has to hand out never
+ * collide with it. The version is incremented like @Version would, and a soft deleted employee comes back.
+ **/
+class EmployeeUpsertRepositoryImpl implements EmployeeUpsertRepository {
+    private static final String UPSERT = "merge into employee e using (select cast(? as bigint) id, "
+            + "cast(? as varchar(255)) first_name, cast(? as varchar(255)) last_name, cast(? as varchar(255)) role) s "
+            + "on e.id = s.id "
+            + "when matched then update set first_name = s.first_name, last_name = s.last_name, role = s.role, "
+            + "deleted = false, version = coalesce(e.version, 0) + 1 "
+            + "when not matched then insert (id, deleted, first_name, last_name, role, version) "
+            + "values (next value for employee_seq, false, s.first_name, s.last_name, s.role, 0)";
+    private static final String UPDATE = "update employee set first_name = ?, last_name = ?, role = ?, "
+            + "version = coalesce(version, 0) + 1 where id = ? and deleted = false";
+    private static final String[] KEYS = {"ID", "VERSION"};
+
+    private final JdbcTemplate jdbcTemplate;
+
+    EmployeeUpsertRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    @Transactional
+    public Employee upsert(Long id, Employee employee) {
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(UPSERT, KEYS);
+            statement.setObject(1, id);
+            statement.setString(2, employee.getFirstName());
+            statement.setString(3, employee.getLastName());
+            statement.setString(4, employee.getRole());
+            return statement;
+        }, keys);
+        return written(keys.getKeys(), employee);
+    }
+
+    @Override
+    @Transactional
+    public Optional<Employee> updateIfVersion(Long id, Employee employee, Collection<Long> versions) {
+        if (versions != null && versions.isEmpty()) {
+            return Optional.empty();
+        }
+        String sql = versions == null ? UPDATE
+                : UPDATE + " and version in (" + String.join(", ", Collections.nCopies(versions.size(), "?")) + ")";
+        KeyHolder keys = new GeneratedKeyHolder();
+        int updated = jdbcTemplate.update(connection -> {
+            PreparedStatement statement = connection.prepareStatement(sql, KEYS);
+            statement.setString(1, employee.getFirstName());
+            statement.setString(2, employee.getLastName());
+            statement.setString(3, employee.getRole());
+            statement.setLong(4, id);
+            int index = 5;
+            if (versions != null) {
+                for (Long version : versions) {
+                    statement.setLong(index++, version);
+                }
+            }
+            return statement;
+        }, keys);
+        return updated == 0 ? Optional.empty() : Optional.of(written(keys.getKeys(), employee));
+    }
+
+    private static Employee written(Map<String, Object> keys, Employee employee) {
+        Employee written = new Employee(employee.getFirstName(), employee.getLastName(), employee.getRole());
+        written.setId(((Number) keys.get("ID")).longValue());
+        written.setVersion(((Number) keys.get("VERSION")).longValue());
+        return written;
+    }
+}
@@ -0,0 +1,58 @@
+package payroll;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Collections;
+
+/**
+ * Chooses how EmployeeController handlers are executed. By default they run on the Tomcat thread like any handler.
+ * <p>
+ * payroll.execution.async=true switches to the bounded async mode (see AsyncExecutionFilter and
+ * EmployeeRequestExecutor), payroll.execution.threads overrides the number of workers (0 means: as many as the
+ * Hikari pool has connections) and payroll.execution.queue-capacity bounds how many requests may wait for a worker
+ * before new ones are rejected.
+ **/
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty("payroll.execution.async")
+public class ExecutionConfiguration {
+    private static final Logger log = LoggerFactory.getLogger(ExecutionConfiguration.class);
+
+    // what HikariConfig settles on when spring.datasource.hikari.maximum-pool-size isn't set
+    private static final int DEFAULT_POOL_SIZE = 10;
+
+    @Bean
+    EmployeeRequestExecutor employeeRequestExecutor(@Value("${payroll.execution.threads:0}") int threads,
+                                                    @Value("${payroll.execution.queue-capacity:100}") int queueCapacity,
+                                                    DataSource dataSource, MeterRegistry registry) throws SQLException {
+        int workers = threads > 0 ? threads
+                // unwrap: with a read replica configured the DataSource is a proxy in front of the primary pool
+                : dataSource.isWrapperFor(HikariDataSource.class) ? poolSize(dataSource.unwrap(HikariDataSource.class))
+                : Runtime.getRuntime().availableProcessors();
+        log.info("Running employee requests on " + workers + " workers with a queue of " + queueCapacity);
+        EmployeeRequestExecutor executor = new EmployeeRequestExecutor(workers, queueCapacity);
+        // executor.* gauges: active workers, queued requests, completed and rejected tasks
+        new ExecutorServiceMetrics(executor.getExecutor(), "payroll.requests", Collections.emptyList()).bindTo(registry);
+        return executor;
+    }
+
+    // the filter is created while Tomcat starts, before the pool has started and filled in its defaults
+    private static int poolSize(HikariDataSource dataSource) {
+        return dataSource.getMaximumPoolSize() > 0 ? dataSource.getMaximumPoolSize() : DEFAULT_POOL_SIZE;
+    }
+
+    @Bean
+    AsyncExecutionFilter asyncExecutionFilter(EmployeeRequestExecutor executor, DispatcherServlet dispatcherServlet) {
+        return new AsyncExecutionFilter(executor, dispatcherServlet);
+    }
+}
@@ -2,10 +2,14 @@ package payroll;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
-@Configuration
+//The sample employees are only loaded while payroll.seed.enabled is true (the default), the fast-start profile skips them.
+//A warm restart of a persistent database (durable profile) finds its employees still there and doesn't add them again.
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "payroll.seed.enabled", matchIfMissing = true)
 public class LoadDatabase {
     private static final Logger log = LoggerFactory.getLogger(LoadDatabase.class);
 
@@ -16,6 +20,10 @@ public class LoadDatabase {
     //Using it, it will create two entities and store them.
     @Bean
     CommandLineRunner initDatabase(EmployeeRepository repository) {
+        // checked now, before any runner (like the EmployeeDataGenerator) adds employees of this run
+        if (repository.count() > 0) {
+            return args -> log.info("Employees found, skipping the sample employees");
+        }
         return args -> {
             log.info("Preloading " + repository.save(new Employee("Bilbo","Baggins", "burglar")));
             log.info("Preloading " + repository.save(new Employee("Frodo","Baggins", "thief")));
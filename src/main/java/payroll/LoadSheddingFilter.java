@@ -0,0 +1,149 @@
+package payroll;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sheds load on the employee API before it reaches the controller:
+ * <p>
+ * every client (by remote address, set server.forward-headers-strategy behind a proxy) gets a token bucket of
+ * payroll.limits.rate.burst requests refilled at payroll.limits.rate.per-second, beyond it the answer is a 429;
+ * <p>
+ * the expensive requests (the full roster GET /employees, the export and the bulk writes) are limited to
+ * payroll.limits.expensive.max-concurrent at a time across all clients, beyond it the answer is a 503.
+ * <p>
+ * Both carry a Retry-After. Rejections are counted in payroll.limits.rejected (tagged limiter=rate or
+ * limiter=concurrency), payroll.limits.expensive.active and payroll.limits.rate.clients are gauges.
+ * <p>
+ * Off unless payroll.limits.enabled is set: behind a load balancer that isn't trusted for its forwarded headers every
+ * request has the balancer's address, all clients would share a single bucket and the whole service its rate.
+ **/
+@Component
+@ConditionalOnProperty("payroll.limits.enabled")
+// ahead of AsyncExecutionFilter, a shed request never takes a worker
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+class LoadSheddingFilter extends OncePerRequestFilter {
+    private final TokenBucketRateLimiter rateLimiter;
+    private final ConcurrencyLimiter expensiveLimiter;
+    private final Counter rateRejected;
+    private final Counter concurrencyRejected;
+
+    LoadSheddingFilter(@Value("${payroll.limits.rate.per-second:50}") double ratePerSecond,
+                       @Value("${payroll.limits.rate.burst:100}") int burst,
+                       @Value("${payroll.limits.rate.max-clients:100000}") long maxClients,
+                       @Value("${payroll.limits.expensive.max-concurrent:4}") int maxConcurrent,
+                       MeterRegistry registry) {
+        this.rateLimiter = new TokenBucketRateLimiter(ratePerSecond, burst, maxClients);
+        this.expensiveLimiter = new ConcurrencyLimiter(maxConcurrent);
+        this.rateRejected = registry.counter("payroll.limits.rejected", "limiter", "rate");
+        this.concurrencyRejected = registry.counter("payroll.limits.rejected", "limiter", "concurrency");
+        Gauge.builder("payroll.limits.expensive.active", expensiveLimiter, ConcurrencyLimiter::inFlight)
+                .description("Expensive employee requests in progress")
+                .register(registry);
+        Gauge.builder("payroll.limits.rate.clients", rateLimiter, TokenBucketRateLimiter::clients)
+                .description("Clients with a rate limit bucket")
+                .register(registry);
+    }
+
+    // only the employee API is limited, actuator endpoints stay reachable for health checks and scrapes
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !path(request).startsWith("/employees");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        long wait = rateLimiter.tryAcquire(request.getRemoteAddr());
+        if (wait > 0) {
+            rateRejected.increment();
+            reject(response, HttpStatus.TOO_MANY_REQUESTS, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1)),
+                    "Rate limit exceeded, retry later");
+            return;
+        }
+        if (!isExpensive(request)) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (!expensiveLimiter.tryAcquire()) {
+            concurrencyRejected.increment();
+            reject(response, HttpStatus.SERVICE_UNAVAILABLE, 1, "Too many concurrent requests, retry later");
+            return;
+        }
+        boolean releaseLater = false;
+        try {
+            chain.doFilter(request, response);
+            // async handlers (StreamingResponseBody, CompletableFuture) are still running, hold the permit until they are done
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleasingListener());
+                releaseLater = true;
+            }
+        } finally {
+            if (!releaseLater) {
+                expensiveLimiter.release();
+            }
+        }
+    }
+
+    private static boolean isExpensive(HttpServletRequest request) {
+        String path = path(request);
+        if (HttpMethod.GET.matches(request.getMethod())) {
+            return (path.equals("/employees") && request.getParameter("size") == null) || path.equals("/employees/export");
+        }
+        return HttpMethod.POST.matches(request.getMethod())
+                && (path.equals("/employees/bulk") || path.equals("/employees/bulk-delete"));
+    }
+
+    private static String path(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private static void reject(HttpServletResponse response, HttpStatus status, long retryAfterSeconds, String message) throws IOException {
+        response.setStatus(status.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+        response.getWriter().write(message);
+    }
+
+    // onComplete follows onTimeout and onError as well, so the permit is given back exactly once
+    private class ReleasingListener implements AsyncListener {
+        @Override
+        public void onComplete(AsyncEvent event) {
+            expensiveLimiter.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // a handler starting async again keeps its listeners only if they re-register
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
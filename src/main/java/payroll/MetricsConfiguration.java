@@ -0,0 +1,59 @@
+package payroll;
+
+import io.micrometer.core.aop.TimedAspect;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.repository.core.support.RepositoryFactoryBeanSupport;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Metrics on top of what Spring Boot already publishes for the payroll service (http.server.requests per endpoint,
+ * hikaricp.* pool gauges, hibernate.* statistics and cache.* for the employee cache):
+ * <p>
+ * spring.data.repository.invocations times every EmployeeRepository call,
+ * <p>
+ * payroll.assembler times the @Timed methods of EmployeeModelAssembler,
+ * <p>
+ * payroll.http.serialization times writing the response body.
+ * <p>
+ * Percentiles and histograms are configured with the management.metrics.distribution.* properties in
+ * application.properties, everything is scraped from /actuator/prometheus.
+ **/
+@Configuration(proxyBeanMethods = false)
+public class MetricsConfiguration implements WebMvcConfigurer {
+    private final ResponseSerializationTimer serializationTimer;
+
+    public MetricsConfiguration(ResponseSerializationTimer serializationTimer) {
+        this.serializationTimer = serializationTimer;
+    }
+
+    // makes @Timed work on any Spring bean, not only on controllers
+    @Bean
+    TimedAspect timedAspect(MeterRegistry registry) {
+        return new TimedAspect(registry);
+    }
+
+    // static and lazy on the registry: post processors are created before most other beans
+    @Bean
+    static BeanPostProcessor repositoryMetricsPostProcessor(ObjectProvider<MeterRegistry> registry) {
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessBeforeInitialization(Object bean, String beanName) {
+                if (bean instanceof RepositoryFactoryBeanSupport) {
+                    ((RepositoryFactoryBeanSupport<?, ?, ?>) bean).addRepositoryFactoryCustomizer(factory ->
+                            factory.addInvocationListener(new RepositoryMetricsListener(registry.getObject())));
+                }
+                return bean;
+            }
+        };
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(serializationTimer);
+    }
+}
@@ -0,0 +1,97 @@
+package payroll;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.Closeable;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Optional read/write splitting, switched on by setting payroll.datasource.replica.jdbc-url.
+ * <p>
+ * Read-only transactions (every EmployeeRepository read, the search fragment and the export) get their connection
+ * from the replica pool, everything else from the primary pool configured with the usual spring.datasource.*
+ * properties. The replica pool is tuned with payroll.datasource.replica.* (any Hikari property); both pools publish
+ * the hikaricp.* metrics, tagged pool=primary and pool=replica.
+ * <p>
+ * Hibernate asks for the connection when the transaction begins, before Spring has marked the transaction as
+ * read-only, so the routing sits behind a LazyConnectionDataSourceProxy: the physical connection is only
+ * fetched (and routed) at the first statement, and a transaction that never reaches the database takes none.
+ **/
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty("payroll.datasource.replica.jdbc-url")
+public class ReadReplicaConfiguration {
+
+    // The pools are no beans of their own: Spring Boot would run its DataSource initialization against each of them
+    // while the routing DataSource (the one it is looking for) is still being created.
+    @Bean
+    @Primary
+    ReadReplicaDataSource dataSource(DataSourceProperties properties, Environment environment, ObjectProvider<MeterRegistry> registry) {
+        Binder binder = Binder.get(environment);
+
+        HikariDataSource primary = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        primary.setPoolName("primary");
+        binder.bind("spring.datasource.hikari", Bindable.ofInstance(primary));
+
+        HikariDataSource replica = new HikariDataSource();
+        replica.setPoolName("replica");
+        replica.setReadOnly(true);
+        // same credentials as the primary unless payroll.datasource.replica.username/password say otherwise
+        replica.setUsername(primary.getUsername());
+        replica.setPassword(primary.getPassword());
+        binder.bind("payroll.datasource.replica", Bindable.ofInstance(replica));
+
+        registry.ifAvailable(meterRegistry -> {
+            primary.setMetricRegistry(meterRegistry);
+            replica.setMetricRegistry(meterRegistry);
+        });
+        return new ReadReplicaDataSource(primary, replica);
+    }
+
+    // closes both pools when the application context shuts down
+    static class ReadReplicaDataSource extends LazyConnectionDataSourceProxy implements Closeable {
+        private final HikariDataSource primary;
+        private final HikariDataSource replica;
+
+        ReadReplicaDataSource(HikariDataSource primary, HikariDataSource replica) {
+            this.primary = primary;
+            this.replica = replica;
+            ReadOnlyRoutingDataSource routing = new ReadOnlyRoutingDataSource();
+            Map<Object, Object> targets = new HashMap<>();
+            targets.put(Boolean.FALSE, primary);
+            targets.put(Boolean.TRUE, replica);
+            routing.setTargetDataSources(targets);
+            routing.setDefaultTargetDataSource(primary);
+            routing.afterPropertiesSet();
+            setTargetDataSource(routing);
+            afterPropertiesSet();
+        }
+
+        @Override
+        public void close() {
+            this.replica.close();
+            this.primary.close();
+        }
+    }
+
+    // replica for read-only transactions, primary for everything else (including work outside of any transaction)
+    static class ReadOnlyRoutingDataSource extends AbstractRoutingDataSource {
+        @Override
+        protected Object determineCurrentLookupKey() {
+            return TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+        }
+    }
+}
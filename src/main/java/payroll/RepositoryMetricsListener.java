@@ -0,0 +1,34 @@
+package payroll;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.repository.core.support.RepositoryMethodInvocationListener;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times every call that reaches a Spring Data repository (EmployeeRepository) as spring.data.repository.invocations,
+ * tagged with the repository, the method, the outcome and the exception, if any. Calls answered by the employee cache
+ * never reach the repository and so are not counted here, they show up in the cache.gets metrics instead.
+ **/
+class RepositoryMetricsListener implements RepositoryMethodInvocationListener {
+    static final String METRIC_NAME = "spring.data.repository.invocations";
+
+    private final MeterRegistry registry;
+
+    RepositoryMetricsListener(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public void afterInvocation(RepositoryMethodInvocation invocation) {
+        Throwable error = invocation.getResult() == null ? null : invocation.getResult().getError();
+        Timer.builder(METRIC_NAME)
+                .tag("repository", invocation.getRepositoryInterface().getSimpleName())
+                .tag("method", invocation.getMethod().getName())
+                .tag("state", invocation.getResult() == null ? "UNKNOWN" : invocation.getResult().getState().name())
+                .tag("exception", error == null ? "None" : error.getClass().getSimpleName())
+                .register(registry)
+                .record(invocation.getDuration(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+    }
+}
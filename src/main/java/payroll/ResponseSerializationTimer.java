@@ -0,0 +1,67 @@
+package payroll;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how long writing the response body takes (Jackson serialization plus pushing the bytes into the response
+ * buffer) as payroll.http.serialization, tagged by uri template like http.server.requests.
+ * <p>
+ * beforeBodyWrite is the last callback before the message converter runs, afterCompletion the first one after the body
+ * was written, so the time between the two is the serialization cost of the request. Together with the repository and
+ * assembler timers this splits http.server.requests into query, link building and serialization.
+ **/
+@ControllerAdvice
+class ResponseSerializationTimer implements ResponseBodyAdvice<Object>, HandlerInterceptor {
+    static final String METRIC_NAME = "payroll.http.serialization";
+    private static final String START_ATTRIBUTE = ResponseSerializationTimer.class.getName() + ".start";
+
+    private final MeterRegistry registry;
+
+    ResponseSerializationTimer(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        if (request instanceof ServletServerHttpRequest) {
+            ((ServletServerHttpRequest) request).getServletRequest().setAttribute(START_ATTRIBUTE, System.nanoTime());
+        }
+        return body;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object start = request.getAttribute(START_ATTRIBUTE);
+        if (!(start instanceof Long)) {
+            return;
+        }
+        Object uri = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        Timer.builder(METRIC_NAME)
+                .tag("uri", uri == null ? "UNKNOWN" : uri.toString())
+                .tag("method", request.getMethod())
+                .register(registry)
+                .record(System.nanoTime() - (Long) start, TimeUnit.NANOSECONDS);
+    }
+}
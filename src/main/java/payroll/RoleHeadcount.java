@@ -0,0 +1,12 @@
+package payroll;
+
+/**
+ * One row of EmployeeRepository.headcountByRole(), a Spring Data interface projection.
+ **/
+public interface RoleHeadcount {
+
+    // null for the employees without a role
+    String getRole();
+
+    long getHeadcount();
+}
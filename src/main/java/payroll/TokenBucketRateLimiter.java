@@ -0,0 +1,64 @@
+package payroll;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket per client, refilled at ratePerSecond up to burst tokens.
+ * <p>
+ * Implemented as the equivalent generic cell rate algorithm: a client's whole bucket is one AtomicLong holding the
+ * theoretical arrival time (TAT) of its next request, and a request is admitted while that time is less than
+ * burst intervals ahead of now. Admitting is a single compare-and-set, so there is no lock for clients to contend on,
+ * and the buckets live in a Caffeine map (itself lock-striped), bounded by maxClients and dropped once idle long
+ * enough to be full again anyway.
+ **/
+class TokenBucketRateLimiter {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final LongSupplier nanoClock;
+    private final Cache<String, AtomicLong> buckets;
+
+    TokenBucketRateLimiter(double ratePerSecond, int burst, long maxClients) {
+        this(ratePerSecond, burst, maxClients, System::nanoTime);
+    }
+
+    TokenBucketRateLimiter(double ratePerSecond, int burst, long maxClients, LongSupplier nanoClock) {
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond));
+        this.burstNanos = this.intervalNanos * Math.max(1, burst);
+        this.nanoClock = nanoClock;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maxClients)
+                .expireAfterAccess(Duration.ofNanos(Math.max(this.burstNanos, TimeUnit.SECONDS.toNanos(1))))
+                .build();
+    }
+
+    /**
+     * Takes a token from the client's bucket. Returns 0 when the request is admitted, otherwise the nanoseconds until
+     * the next token is available (nothing is taken then).
+     **/
+    long tryAcquire(String client) {
+        AtomicLong arrival = buckets.get(client, key -> new AtomicLong(nanoClock.getAsLong()));
+        while (true) {
+            long now = nanoClock.getAsLong();
+            long current = arrival.get();
+            long next = Math.max(current, now) + intervalNanos;
+            long ahead = next - now - burstNanos;
+            if (ahead > 0) {
+                return ahead;
+            }
+            if (arrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    // clients with a bucket right now, for the payroll.limits.rate.clients gauge
+    long clients() {
+        return buckets.estimatedSize();
+    }
+}
@@ -0,0 +1,21 @@
+package payroll;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ends a class data sharing training run (see the cds profile in pom.xml): with payroll.startup.exit-when-ready=true
+ * the application shuts down as soon as it has started, and the JVM writes the classes it loaded to the archive.
+ **/
+@Component
+@ConditionalOnProperty("payroll.startup.exit-when-ready")
+class TrainingRunShutdown implements ApplicationListener<ApplicationReadyEvent> {
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
@@ -0,0 +1,19 @@
+package payroll;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+//A fields parameter naming something Employee doesn't have is a client error, rendered as an HTTP 400.
+@ControllerAdvice
+class UnknownEmployeeFieldAdvice {
+
+    @ResponseBody
+    @ExceptionHandler(UnknownEmployeeFieldException.class)
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    String unknownEmployeeFieldHandler(UnknownEmployeeFieldException ex) {
+        return ex.getMessage();
+    }
+}
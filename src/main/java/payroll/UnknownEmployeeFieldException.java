@@ -0,0 +1,7 @@
+package payroll;
+
+public class UnknownEmployeeFieldException extends RuntimeException {
+    UnknownEmployeeFieldException(String field) {
+        super("Unknown employee field: " + field + ", expected any of " + EmployeeFields.NAMES);
+    }
+}
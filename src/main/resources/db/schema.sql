@@ -0,0 +1,7 @@
+-- Schema of the Employee entity (what spring.jpa.hibernate.ddl-auto=create-drop generates), used by the fast-start
+-- profile, where Hibernate only validates it. Idempotent, so it can run on every start against a persistent database.
+create sequence if not exists employee_seq start with 1 increment by 50;
+create table if not exists employee (id bigint not null, deleted boolean default false not null, first_name varchar(255), last_name varchar(255), role varchar(255), version bigint, primary key (id));
+create index if not exists idx_employee_role on employee (role, id);
+create index if not exists idx_employee_first_name on employee (first_name, id);
+create index if not exists idx_employee_last_name on employee (last_name, id);
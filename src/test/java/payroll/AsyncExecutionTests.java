@@ -0,0 +1,77 @@
+package payroll;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.DispatcherServlet;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// with payroll.execution.async=true the handlers answer from the worker pool, through servlet async processing
+@SpringBootTest(classes = PayrollApplication.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+		"spring.datasource.url=jdbc:h2:mem:payroll-async-test;DB_CLOSE_DELAY=-1",
+		"payroll.execution.async=true"})
+class AsyncExecutionTests {
+
+	@Autowired
+	private TestRestTemplate rest;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Test
+	void handlersCompleteOnTheWorkerPool() {
+		double completed = registry.get("executor.completed").tag("name", "payroll.requests").functionCounter().count();
+
+		URI created = rest.postForLocation("/employees", Map.of("name", "Async Baggins", "role", "worker"));
+		ResponseEntity<Map> found = rest.getForEntity(created, Map.class);
+		assertThat(found.getStatusCode()).isEqualTo(HttpStatus.OK);
+		assertThat(found.getBody()).containsEntry("name", "Async Baggins");
+
+		assertThat(rest.getForEntity("/employees/999999", String.class).getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+		assertThat(registry.get("executor.completed").tag("name", "payroll.requests").functionCounter().count())
+				.isGreaterThanOrEqualTo(completed + 3);
+	}
+
+	@Test
+	void requestsBeyondWorkersAndQueueAreShed() throws Exception {
+		EmployeeRequestExecutor executor = new EmployeeRequestExecutor(1, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		try {
+			executor.execute(() -> {
+				try {
+					release.await(5, TimeUnit.SECONDS);
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			executor.execute(() -> {});
+			AsyncExecutionFilter filter = new AsyncExecutionFilter(executor, new DispatcherServlet());
+			MockHttpServletRequest request = new MockHttpServletRequest("GET", "/employees/1");
+			request.setAsyncSupported(true);
+			MockHttpServletResponse response = new MockHttpServletResponse();
+
+			filter.doFilter(request, response, new MockFilterChain());
+
+			assertThat(response.getStatus()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+			assertThat(response.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+			assertThat(response.getContentAsString()).isEqualTo("Too many concurrent requests, retry later");
+		} finally {
+			release.countDown();
+			executor.destroy();
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package payroll;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// two starts of the durable profile on the same data directory, the second one a warm restart
+class DurableProfileTests {
+
+	@TempDir
+	Path data;
+
+	private ConfigurableApplicationContext start() {
+		return new SpringApplicationBuilder(PayrollApplication.class)
+				.profiles("durable")
+				.run("--server.port=0", "--payroll.data.dir=" + data);
+	}
+
+	@Test
+	void employeesSurviveARestartWithoutBeingSeededAgain() {
+		Long id;
+		try (ConfigurableApplicationContext context = start()) {
+			EmployeeRepository repository = context.getBean(EmployeeRepository.class);
+			assertThat(repository.count()).isEqualTo(2);
+			id = repository.save(new Employee("Samwise", "Gamgee", "gardener")).getId();
+		}
+
+		try (ConfigurableApplicationContext context = start()) {
+			EmployeeRepository repository = context.getBean(EmployeeRepository.class);
+			assertThat(repository.count()).isEqualTo(3);
+			assertThat(repository.findById(id)).get().extracting(Employee::getName).isEqualTo("Samwise Gamgee");
+			// the sequence continued where the first run stopped
+			assertThat(repository.save(new Employee("Rosie", "Cotton", "cook")).getId()).isGreaterThan(id);
+		}
+	}
+}
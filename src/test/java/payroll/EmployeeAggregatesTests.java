@@ -0,0 +1,88 @@
+package payroll;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// a short refresh, so the recount after a delete comes around within the test
+@SpringBootTest(classes = PayrollApplication.class, properties = {
+		"spring.datasource.url=jdbc:h2:mem:payroll-aggregates-test;DB_CLOSE_DELAY=-1",
+		"payroll.aggregates.refresh-ms=50"})
+@AutoConfigureMockMvc
+class EmployeeAggregatesTests {
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private EmployeeAggregates aggregates;
+
+	@Autowired
+	private EmployeeRepository repository;
+
+	@Autowired
+	private EmployeeDeleter deleter;
+
+	@Autowired
+	private ApplicationEventPublisher events;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Test
+	void aggregatesCountTheEmployeesPerRole() throws Exception {
+		mvc.perform(get("/employees/aggregates"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.total").value(repository.count()))
+				.andExpect(jsonPath("$.roles.burglar").value(1))
+				.andExpect(jsonPath("$.roles.thief").value(1))
+				.andExpect(jsonPath("$.reconciledAt").isString());
+	}
+
+	@Test
+	void createsAreCountedRightAwayAndDeletesByTheNextRecount() throws Exception {
+		long total = aggregates.headcount().getTotal();
+		// published inside the write's transaction, like the EmployeeController does
+		Employee gardener = new TransactionTemplate(transactionManager).execute(status -> {
+			Employee saved = repository.save(new Employee("Samwise", "Gamgee", "gardener"));
+			events.publishEvent(EmployeeChangeEvent.created(saved));
+			return saved;
+		});
+
+		EmployeeHeadcount created = aggregates.headcount();
+		assertThat(created.getTotal()).isEqualTo(total + 1);
+		assertThat(created.getRoles()).containsEntry("gardener", 1L);
+
+		deleter.delete(List.of(gardener.getId()));
+		long deadline = System.currentTimeMillis() + 10_000;
+		while (aggregates.headcount().getRoles().containsKey("gardener") && System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		EmployeeHeadcount deleted = aggregates.headcount();
+		assertThat(deleted.getTotal()).isEqualTo(total);
+		assertThat(deleted.getRoles()).doesNotContainKey("gardener");
+	}
+
+	@Test
+	void aCreateTheRecountAlreadySawIsNotCountedTwice() {
+		Employee cook = repository.save(new Employee("Rosie", "Cotton", "cook"));
+		// created before the recount and only delivered after it, as if its commit had raced the GROUP BY
+		EmployeeChangeEvent late = EmployeeChangeEvent.created(cook);
+		aggregates.reconcile();
+
+		events.publishEvent(late);
+		assertThat(aggregates.headcount().getTotal()).isEqualTo(repository.count());
+	}
+}
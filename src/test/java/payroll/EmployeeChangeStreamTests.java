@@ -0,0 +1,105 @@
+package payroll;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmployeeChangeStreamTests {
+
+	private final MeterRegistry registry = new SimpleMeterRegistry();
+
+	// 100 events to replay from, 2 queued events per subscriber
+	private final EmployeeChangeStream stream = new EmployeeChangeStream(100, 2, registry);
+
+	private final CountDownLatch unblock = new CountDownLatch(1);
+
+	@AfterEach
+	void destroy() {
+		unblock.countDown();
+		stream.destroy();
+	}
+
+	@Test
+	void aSubscriberThatStopsReadingIsDroppedWithoutHoldingUpTheOthers() throws Exception {
+		RecordingEmitter stuck = new RecordingEmitter(unblock);
+		RecordingEmitter reading = new RecordingEmitter(null);
+		stream.subscribe(stuck, null);
+		stream.subscribe(reading, null);
+
+		for (long id = 1; id <= 10; id++) {
+			stream.publish(EmployeeChangeEvent.deleted(id));
+			// one at a time, the reading subscriber's queue holds no more than two either
+			awaitEvents(reading, (int) id);
+		}
+
+		assertThat(reading.events).hasSize(10);
+		assertThat(registry.get("payroll.events.lagging").counter().count()).isEqualTo(1);
+		assertThat(registry.get("payroll.events.subscribers").gauge().value()).isEqualTo(1);
+	}
+
+	@Test
+	void anIdOfAnotherEpochIsAnsweredWithReset() throws Exception {
+		RecordingEmitter first = new RecordingEmitter(null);
+		stream.subscribe(first, null);
+		stream.publish(EmployeeChangeEvent.deleted(1L));
+		stream.publish(EmployeeChangeEvent.deleted(2L));
+		awaitEvents(first, 2);
+		String id = first.events.get(0).substring(first.events.get(0).indexOf("id:") + 3, first.events.get(0).indexOf('\n'));
+
+		RecordingEmitter resumed = new RecordingEmitter(null);
+		stream.subscribe(resumed, id);
+		awaitEvents(resumed, 1);
+		assertThat(resumed.events.get(0)).contains("event:DELETED\n").contains("\"id\":2");
+
+		// a restart starts the sequence over, the same number from another epoch is no position in this stream
+		RecordingEmitter restarted = new RecordingEmitter(null);
+		stream.subscribe(restarted, "0" + id.substring(id.indexOf('-')));
+		awaitEvents(restarted, 1);
+		assertThat(restarted.events).hasSize(1);
+		assertThat(restarted.events.get(0)).contains("event:" + EmployeeChangeStream.RESET + "\n");
+	}
+
+	// the events are sent by the payroll-events-send threads, give them a moment
+	private static void awaitEvents(RecordingEmitter emitter, int count) throws InterruptedException {
+		for (int i = 0; i < 50 && emitter.events.size() < count; i++) {
+			Thread.sleep(100);
+		}
+		assertThat(emitter.events).hasSizeGreaterThanOrEqualTo(count);
+	}
+
+	// records what would be written, or blocks like a client with a full TCP window until released
+	private static class RecordingEmitter extends SseEmitter {
+		private final List<String> events = new CopyOnWriteArrayList<>();
+		private final CountDownLatch blocked;
+
+		RecordingEmitter(CountDownLatch blocked) {
+			this.blocked = blocked;
+		}
+
+		@Override
+		public void send(SseEventBuilder builder) {
+			if (blocked != null) {
+				try {
+					blocked.await();
+				} catch (InterruptedException ex) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			events.add(builder.build().stream()
+					.map(ResponseBodyEmitter.DataWithMediaType::getData)
+					// the JSON of an event is left to the message converters, its id is enough here
+					.map(data -> data instanceof EmployeeChangeEvent ? "{\"id\":" + ((EmployeeChangeEvent) data).getId() + "}" : data.toString())
+					.collect(Collectors.joining()));
+		}
+	}
+}
@@ -0,0 +1,460 @@
+package payroll;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// all requests come from the same address, the rate limits are covered by LoadSheddingFilterTests
+@SpringBootTest(classes = PayrollApplication.class, properties = "payroll.limits.enabled=false")
+@AutoConfigureMockMvc
+@AutoConfigureMetrics
+class EmployeeControllerTests {
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	// the tests share the context and its database: each one creates the employees it looks at, under a role of
+	// its own where it reads lists, and never relies on the seeded employees or on what the other tests wrote
+	private static final AtomicInteger ROLES = new AtomicInteger();
+
+	private static String uniqueRole(String role) {
+		return role + "-" + ROLES.incrementAndGet();
+	}
+
+	private String create(String name, String role) throws Exception {
+		return create("{\"name\":\"" + name + "\",\"role\":\"" + role + "\"}");
+	}
+
+	private String create(String employee) throws Exception {
+		return mvc.perform(post("/employees").contentType(MediaType.APPLICATION_JSON).content(employee))
+				.andExpect(status().isCreated())
+				.andReturn().getResponse().getHeader(HttpHeaders.LOCATION);
+	}
+
+	private static String idOf(String location) {
+		return location.substring(location.lastIndexOf('/') + 1);
+	}
+
+	@Test
+	void keysetPageLinksToNextAndPrevPages() throws Exception {
+		String role = uniqueRole("burglar");
+		String first = idOf(create("Bilbo Baggins", role));
+		String second = idOf(create("Frodo Baggins", role));
+
+		mvc.perform(get("/employees").param("role", role).param("size", "1"))
+				// blocking mode: the completed future is written right away, without an async dispatch
+				.andExpect(request().asyncNotStarted())
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.employeeList", hasSize(1)))
+				.andExpect(jsonPath("$._embedded.employeeList[0].id").value(Long.parseLong(first)))
+				.andExpect(jsonPath("$._links.next.href", endsWith("/employees?role=" + role + "&after=" + first + "&size=1")))
+				.andExpect(jsonPath("$._links.prev").doesNotExist());
+
+		mvc.perform(get("/employees").param("role", role).param("after", first).param("size", "1"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.employeeList", hasSize(1)))
+				.andExpect(jsonPath("$._embedded.employeeList[0].id").value(Long.parseLong(second)))
+				.andExpect(jsonPath("$._links.prev.href", endsWith("/employees?role=" + role + "&before=" + second + "&size=1")))
+				.andExpect(jsonPath("$._links.next").doesNotExist());
+	}
+
+	@Test
+	void exportStreamsOneJsonObjectPerLine() throws Exception {
+		String role = uniqueRole("gaffer");
+		String id = idOf(create("Hamfast Gamgee", role));
+
+		MvcResult result = mvc.perform(get("/employees/export"))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		mvc.perform(asyncDispatch(result))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType("application/x-ndjson"))
+				.andExpect(content().string(containsString("{\"id\":" + id + ",\"role\":\"" + role + "\","
+						+ "\"firstName\":\"Hamfast\",\"lastName\":\"Gamgee\",\"name\":\"Hamfast Gamgee\"}\n")))
+				.andExpect(content().string(endsWith("}\n")));
+	}
+
+	@Test
+	void bulkReportsOneResultPerElement() throws Exception {
+		String existing = create("Frodo Baggins", "ringbearer");
+
+		mvc.perform(post("/employees/bulk")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"firstName\":\"Samwise\",\"lastName\":\"Gamgee\",\"role\":\"gardener\"},"
+						+ "{\"id\":" + idOf(existing) + ",\"firstName\":\"Frodo\",\"lastName\":\"Baggins\",\"role\":\"thief\"},"
+						+ "{\"id\":999999,\"firstName\":\"Hamfast\",\"lastName\":\"Gamgee\",\"role\":\"gaffer\"}]"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$", hasSize(3)))
+				.andExpect(jsonPath("$[0].status").value("CREATED"))
+				.andExpect(jsonPath("$[0].id").isNumber())
+				.andExpect(jsonPath("$[1].index").value(1))
+				.andExpect(jsonPath("$[1].status").value("UPDATED"))
+				.andExpect(jsonPath("$[1].id").value(Long.parseLong(idOf(existing))))
+				.andExpect(jsonPath("$[2].status").value("CREATED_WITH_NEW_ID"))
+				.andExpect(jsonPath("$[2].id", not(999999)));
+
+		mvc.perform(get(existing)).andExpect(jsonPath("$.role").value("thief"));
+	}
+
+	@Test
+	void bulkFailureReportsTheIdsAsSent() throws Exception {
+		String tooLong = "x".repeat(300);
+		mvc.perform(post("/employees/bulk")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("[{\"firstName\":\"Ted\",\"lastName\":\"Sandyman\",\"role\":\"miller\"},"
+						+ "{\"id\":999998,\"firstName\":\"Ted\",\"lastName\":\"Sandyman\",\"role\":\"" + tooLong + "\"}]"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$[0].status").value("FAILED"))
+				.andExpect(jsonPath("$[0].id").doesNotExist())
+				.andExpect(jsonPath("$[1].status").value("FAILED"))
+				.andExpect(jsonPath("$[1].id").value(999998));
+	}
+
+	@Test
+	void deleteNeedsNoBodyAndIsIdempotent() throws Exception {
+		String first = create("{\"name\":\"Lotho Sackville\",\"role\":\"shirriff\"}");
+		String second = create("{\"name\":\"Lobelia Sackville\",\"role\":\"shirriff\"}");
+		String third = create("{\"name\":\"Otho Sackville\",\"role\":\"shirriff\"}");
+
+		mvc.perform(get(first)).andExpect(status().isOk());
+		mvc.perform(delete(first)).andExpect(status().isNoContent());
+		mvc.perform(get(first)).andExpect(status().isNotFound());
+		mvc.perform(delete(first)).andExpect(status().isNoContent());
+
+		mvc.perform(post("/employees/bulk-delete")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("[" + idOf(first) + "," + idOf(second) + "," + idOf(third) + "]"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.requested").value(3))
+				.andExpect(jsonPath("$.deleted").value(2));
+		mvc.perform(get(third)).andExpect(status().isNotFound());
+	}
+
+	@Test
+	void roleUpdateWritesOnlyTheRole() throws Exception {
+		String location = create("{\"name\":\"Fredegar Bolger\",\"role\":\"lookout\"}");
+
+		mvc.perform(put(location + "/role")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"role\":\"conspirator\"}"))
+				.andExpect(status().isNoContent());
+		mvc.perform(get(location))
+				.andExpect(jsonPath("$.role").value("conspirator"))
+				.andExpect(jsonPath("$.name").value("Fredegar Bolger"));
+
+		mvc.perform(put("/employees/999999/role")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"role\":\"conspirator\"}"))
+				.andExpect(status().isNotFound());
+	}
+
+	@Test
+	void putUpsertsTheEmployee() throws Exception {
+		String location = mvc.perform(put("/employees/999999")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"name\":\"Tom Bombadil\",\"role\":\"master\"}"))
+				.andExpect(status().isCreated())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"0\""))
+				.andExpect(jsonPath("$.name").value("Tom Bombadil"))
+				.andReturn().getResponse().getHeader(HttpHeaders.LOCATION);
+		assertThat(location, not(endsWith("/999999")));
+
+		mvc.perform(put(location)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"firstName\":\"Tom\",\"lastName\":\"Bombadil\",\"role\":\"eldest\"}"))
+				.andExpect(status().isCreated())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"1\""))
+				.andExpect(header().string(HttpHeaders.LOCATION, location));
+		mvc.perform(get(location)).andExpect(jsonPath("$.role").value("eldest"));
+
+		mvc.perform(put("/employees/999999").header(HttpHeaders.IF_MATCH, "*")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"name\":\"Tom Bombadil\",\"role\":\"master\"}"))
+				.andExpect(status().isPreconditionFailed());
+	}
+
+	@Test
+	void singleLookupIsCachedUntilTheEmployeeIsWritten() throws Exception {
+		String location = create("Farmer Maggot", "farmer");
+		Long id = Long.valueOf(idOf(location));
+		Cache cache = cacheManager.getCache(EmployeeRepository.EMPLOYEE_CACHE);
+		cache.evict(id);
+
+		mvc.perform(get(location)).andExpect(status().isOk());
+		assertThat(cache.get(id), notNullValue());
+
+		mvc.perform(put(location)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"name\":\"Farmer Maggot\",\"role\":\"mushroom grower\"}"))
+				.andExpect(status().isCreated());
+		assertThat(cache.get(id), nullValue());
+	}
+
+	@Test
+	void repositoryAssemblerAndSerializationTimersArePublished() throws Exception {
+		mvc.perform(get("/employees")).andExpect(status().isOk());
+
+		mvc.perform(get("/actuator/prometheus"))
+				.andExpect(status().isOk())
+				.andExpect(content().string(containsString("spring_data_repository_invocations_seconds_count{exception=\"None\",method=\"findAll\",repository=\"EmployeeRepository\",state=\"SUCCESS\",}")))
+				.andExpect(content().string(containsString("payroll_assembler_seconds_count{")))
+				.andExpect(content().string(containsString("payroll_http_serialization_seconds_count{method=\"GET\",uri=\"/employees\",}")))
+				.andExpect(content().string(containsString("hikaricp_connections_active")));
+	}
+
+	@Test
+	void pagedSearchFiltersByRoleAndNamePrefix() throws Exception {
+		String thief = uniqueRole("thief");
+		String burglar = uniqueRole("burglar");
+		create("Frodo Baggins", thief);
+		create("Lobelia Sackville-Baggins", thief);
+		create("Bilbo Baggins", burglar);
+
+		mvc.perform(get("/employees").param("size", "10").param("role", thief).param("lastName", "Bag"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.employeeList", hasSize(1)))
+				.andExpect(jsonPath("$._embedded.employeeList[0].firstName").value("Frodo"))
+				.andExpect(jsonPath("$._links.self.href", endsWith("/employees?role=" + thief + "&lastName=Bag&size=10")));
+
+		// the prefix is taken literally, % is no wildcard
+		mvc.perform(get("/employees").param("size", "10").param("role", burglar).param("firstName", "B%"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded").doesNotExist());
+	}
+
+	@Test
+	void conditionalRequestsUseTheVersionAsETag() throws Exception {
+		String location = mvc.perform(post("/employees")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"name\":\"Merry Brandybuck\",\"role\":\"squire\"}"))
+				.andExpect(status().isCreated())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"0\""))
+				.andReturn().getResponse().getHeader(HttpHeaders.LOCATION);
+
+		mvc.perform(get(location).header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+				.andExpect(status().isNotModified())
+				.andExpect(content().string(""));
+
+		mvc.perform(put(location).header(HttpHeaders.IF_MATCH, "\"7\"")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"name\":\"Merry Brandybuck\",\"role\":\"knight\"}"))
+				.andExpect(status().isPreconditionFailed());
+
+		mvc.perform(put(location).header(HttpHeaders.IF_MATCH, "\"0\"")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"name\":\"Merry Brandybuck\",\"role\":\"knight\"}"))
+				.andExpect(status().isCreated())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"1\""));
+
+		mvc.perform(get(location).header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.role").value("knight"));
+	}
+
+	@Test
+	void fieldsSelectASparseRepresentation() throws Exception {
+		String role = uniqueRole("innkeeper");
+		String first = create("Barliman Butterbur", role);
+		create("Nob Butterbur", role);
+
+		mvc.perform(get("/employees").param("role", role).param("size", "1").param("fields", "name,id"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.employeeList[0].id").value(Long.parseLong(idOf(first))))
+				.andExpect(jsonPath("$._embedded.employeeList[0].name").value("Barliman Butterbur"))
+				.andExpect(jsonPath("$._embedded.employeeList[0].role").doesNotExist())
+				.andExpect(jsonPath("$._embedded.employeeList[0]._links.self.href", endsWith("/employees/" + idOf(first))))
+				.andExpect(jsonPath("$._links.next.href",
+						endsWith("/employees?role=" + role + "&fields=id,name&after=" + idOf(first) + "&size=1")));
+
+		mvc.perform(get(first).param("fields", "role"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.role").value(role))
+				.andExpect(jsonPath("$.id").doesNotExist())
+				.andExpect(jsonPath("$._links.employees.href", endsWith("/employees")));
+
+		mvc.perform(get("/employees").param("fields", "firstName"))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$._embedded.employeeList[*].firstName", hasItem("Barliman")))
+				.andExpect(jsonPath("$._embedded.employeeList[*].role", empty()));
+
+		mvc.perform(get(first).param("fields", "salary"))
+				.andExpect(status().isBadRequest());
+	}
+
+	@Test
+	void changesAreStreamedAndReplayedAfterLastEventId() throws Exception {
+		MvcResult live = mvc.perform(get("/employees/events").accept(MediaType.TEXT_EVENT_STREAM))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		mvc.perform(post("/employees")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"name\":\"Pippin Took\",\"role\":\"guard\"}"))
+				.andExpect(status().isCreated());
+
+		String stream = awaitContent(live, "Pippin");
+		// the ids are <epoch>-<sequence>
+		Matcher created = Pattern.compile("id:(\\w+)-(\\d+)\nevent:CREATED\ndata:\\{\"type\":\"CREATED\"[^\n]*Pippin").matcher(stream);
+		assertThat(created.find(), equalTo(true));
+		String epoch = created.group(1);
+		long id = Long.parseLong(created.group(2));
+
+		MvcResult replayed = mvc.perform(get("/employees/events").header("Last-Event-ID", epoch + "-" + (id - 1)))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		assertThat(awaitContent(replayed, "Pippin"), startsWith("id:" + epoch + "-" + id + "\nevent:CREATED\n"));
+
+		// the same sequence number from before a restart is no position in this stream
+		MvcResult restarted = mvc.perform(get("/employees/events").header("Last-Event-ID", "0-" + (id - 1)))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		assertThat(awaitContent(restarted, "RESET"), startsWith("id:" + epoch + "-"));
+		assertThat(restarted.getResponse().getContentAsString(), containsString("\nevent:RESET\n"));
+		assertThat(restarted.getResponse().getContentAsString(), not(containsString("Pippin")));
+	}
+
+	@Test
+	void aClosedStreamIsNoLongerCountedAsSubscriber() throws Exception {
+		double before = subscribers();
+		MvcResult live = mvc.perform(get("/employees/events").accept(MediaType.TEXT_EVENT_STREAM))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+		assertThat(awaitSubscribers(before + 1), equalTo(before + 1));
+
+		// what the container does once the client went away, without waiting for the next event
+		live.getRequest().getAsyncContext().complete();
+		assertThat(awaitSubscribers(before), equalTo(before));
+	}
+
+	private double subscribers() {
+		return registry.get("payroll.events.subscribers").gauge().value();
+	}
+
+	// the subscribers are added and dropped by the payroll-events thread as well
+	private double awaitSubscribers(double expected) throws Exception {
+		for (int i = 0; i < 50 && subscribers() != expected; i++) {
+			Thread.sleep(100);
+		}
+		return subscribers();
+	}
+
+	// the events are sent by the payroll-events thread, give it a moment
+	private static String awaitContent(MvcResult result, String expected) throws Exception {
+		String content = "";
+		for (int i = 0; i < 50 && !content.contains(expected); i++) {
+			Thread.sleep(100);
+			content = result.getResponse().getContentAsString();
+		}
+		return content;
+	}
+
+	@Test
+	void cborIsTheHalDocumentInBinary() throws Exception {
+		String role = uniqueRole("burglar");
+		String location = create("Bilbo Baggins", role);
+
+		String json = mvc.perform(get("/employees").param("role", role).param("size", "10"))
+				.andExpect(status().isOk())
+				.andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT)))
+				.andExpect(header().string(HttpHeaders.ETAG, startsWith("W/\"")))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+		MockHttpServletResponse response = mvc.perform(get("/employees").param("role", role).param("size", "10")
+				.accept("application/cbor"))
+				.andExpect(status().isOk())
+				.andExpect(content().contentType("application/cbor"))
+				.andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT)))
+				.andExpect(header().string(HttpHeaders.ETAG, startsWith("W/\"")))
+				.andReturn().getResponse();
+		byte[] cbor = response.getContentAsByteArray();
+		assertThat(response.getHeader(HttpHeaders.ETAG), not(equalTo(json)));
+
+		// a cached JSON page doesn't answer for the CBOR one, nor the other way around
+		mvc.perform(get("/employees").param("role", role).param("size", "10").accept("application/cbor")
+				.header(HttpHeaders.IF_NONE_MATCH, json))
+				.andExpect(status().isOk());
+		mvc.perform(get("/employees").param("role", role).param("size", "10").accept("application/cbor")
+				.header(HttpHeaders.IF_NONE_MATCH, response.getHeader(HttpHeaders.ETAG)))
+				.andExpect(status().isNotModified())
+				.andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT)));
+
+		JsonNode employees = new ObjectMapper(new CBORFactory()).readTree(cbor);
+		assertThat(employees.at("/_embedded/employeeList/0/name").asText(), equalTo("Bilbo Baggins"));
+		assertThat(employees.at("/_embedded/employeeList/0/_links/self/href").asText(), equalTo(location));
+		assertThat(employees.at("/_links/self/href").asText(), endsWith("/employees?role=" + role + "&size=10"));
+	}
+
+	@Test
+	void eachRepresentationOfAnEmployeeHasItsOwnStrongETag() throws Exception {
+		String location = mvc.perform(post("/employees")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"name\":\"Fredegar Bolger\",\"role\":\"lookout\"}"))
+				.andExpect(status().isCreated())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"0\""))
+				.andReturn().getResponse().getHeader(HttpHeaders.LOCATION);
+
+		mvc.perform(get(location).accept("application/cbor"))
+				.andExpect(status().isOk())
+				.andExpect(header().stringValues(HttpHeaders.VARY, hasItem(HttpHeaders.ACCEPT)))
+				.andExpect(header().string(HttpHeaders.ETAG, "\"0-cbor\""));
+
+		mvc.perform(get(location).accept("application/cbor").header(HttpHeaders.IF_NONE_MATCH, "\"0\""))
+				.andExpect(status().isOk());
+
+		mvc.perform(get(location).accept("application/cbor").header(HttpHeaders.IF_NONE_MATCH, "\"0-cbor\""))
+				.andExpect(status().isNotModified());
+
+		mvc.perform(put(location).header(HttpHeaders.IF_MATCH, "\"0-cbor\"")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"name\":\"Fredegar Bolger\",\"role\":\"guard\"}"))
+				.andExpect(status().isCreated())
+				.andExpect(header().string(HttpHeaders.ETAG, "\"1\""));
+	}
+
+}
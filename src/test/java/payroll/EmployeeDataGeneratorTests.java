@@ -0,0 +1,70 @@
+package payroll;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// a bit more than one statement's worth, next to the two employees of LoadDatabase
+@SpringBootTest(classes = PayrollApplication.class, properties = {
+		"spring.datasource.url=jdbc:h2:mem:payroll-generator-test;DB_CLOSE_DELAY=-1",
+		"payroll.seed.generate=150000"})
+class EmployeeDataGeneratorTests {
+
+	@Autowired
+	private EmployeeDataGenerator generator;
+
+	@Autowired
+	private EmployeeRepository repository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void generatedEmployeesAreReadableAndLeaveTheSequenceAlone() {
+		assertThat(repository.count()).isEqualTo(150_002);
+		assertThat(generator.getLastId() - generator.getFirstId()).isEqualTo(149_999);
+
+		Employee generated = repository.findById(generator.getLastId()).orElseThrow();
+		assertThat(generated.getName()).isNotBlank();
+		assertThat(EmployeeDataGenerator.ROLES).contains(generated.getRole());
+
+		Employee created = repository.save(new Employee("Farmer", "Maggot", "farmer"));
+		assertThat(created.getId()).isGreaterThan(generator.getLastId());
+	}
+
+	@Test
+	void aFailedLoadBuildsTheDroppedIndexesAgain() {
+		String indexes = "select count(distinct index_name) from information_schema.indexes "
+				+ "where table_name = 'EMPLOYEE' and primary_key = false and constraint_name is null";
+		int before = jdbcTemplate.queryForObject(indexes, Integer.class);
+		assertThat(before).isPositive();
+
+		// every chunk runs in its own transaction, none of them can start
+		PlatformTransactionManager unavailable = new PlatformTransactionManager() {
+			@Override
+			public TransactionStatus getTransaction(TransactionDefinition definition) {
+				throw new CannotCreateTransactionException("unavailable");
+			}
+
+			@Override
+			public void commit(TransactionStatus status) {
+			}
+
+			@Override
+			public void rollback(TransactionStatus status) {
+			}
+		};
+		EmployeeDataGenerator failing = new EmployeeDataGenerator(jdbcTemplate, unavailable, 1_000_000);
+		assertThatThrownBy(failing::run).isInstanceOf(CannotCreateTransactionException.class);
+
+		assertThat(jdbcTemplate.queryForObject(indexes, Integer.class)).isEqualTo(before);
+	}
+}
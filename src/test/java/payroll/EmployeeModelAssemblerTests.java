@@ -0,0 +1,41 @@
+package payroll;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.Links;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmployeeModelAssemblerTests {
+
+	private final EmployeeModelAssembler assembler = new EmployeeModelAssembler();
+
+	@AfterEach
+	void resetRequest() {
+		RequestContextHolder.resetRequestAttributes();
+	}
+
+	@Test
+	void templatedLinksResolveAgainstTheCurrentRequest() {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/payroll/employees");
+		request.setContextPath("/payroll");
+		request.setServerName("hr.example.com");
+		request.setServerPort(8443);
+		request.setScheme("https");
+		RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+
+		Employee employee = new Employee("Bilbo", "Baggins", "burglar");
+		employee.setId(42L);
+
+		Links expected = Links.of(Link.of("https://hr.example.com:8443/payroll/employees/42"),
+				Link.of("https://hr.example.com:8443/payroll/employees", "employees"));
+
+		assertThat(assembler.toModel(employee).getLinks()).hasToString(expected.toString());
+		assertThat(assembler.linkTemplates().toModel(employee).getLinks()).hasToString(expected.toString());
+	}
+
+}
@@ -0,0 +1,58 @@
+package payroll;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class EmployeeRequestExecutorTests {
+
+	private EmployeeRequestExecutor executor;
+
+	@AfterEach
+	void shutdown() {
+		if (executor != null) {
+			executor.destroy();
+		}
+	}
+
+	@Test
+	void runsOnAPayrollRequestWorker() throws Exception {
+		executor = new EmployeeRequestExecutor(1, 1);
+		CompletableFuture<String> thread = new CompletableFuture<>();
+
+		executor.execute(() -> thread.complete(Thread.currentThread().getName()));
+
+		assertThat(thread.get(5, TimeUnit.SECONDS)).startsWith("payroll-request-");
+	}
+
+	@Test
+	void rejectsOnceWorkersAndQueueAreFull() throws Exception {
+		executor = new EmployeeRequestExecutor(1, 1);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch queued = new CountDownLatch(1);
+
+		executor.execute(() -> {
+			started.countDown();
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		started.await(5, TimeUnit.SECONDS);
+		executor.execute(queued::countDown);
+
+		assertThatThrownBy(() -> executor.execute(() -> {})).isInstanceOf(RejectedExecutionException.class);
+		release.countDown();
+		assertThat(queued.await(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+}
@@ -0,0 +1,85 @@
+package payroll;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// the interval never comes around during the test, only the max-pending trigger flushes
+@SpringBootTest(classes = PayrollApplication.class, properties = {
+		"spring.datasource.url=jdbc:h2:mem:payroll-write-behind-test;DB_CLOSE_DELAY=-1",
+		"payroll.writes.coalesce.enabled=true",
+		"payroll.writes.coalesce.interval-ms=3600000",
+		"payroll.writes.coalesce.max-pending=2"})
+class EmployeeRoleWriterTests {
+
+	@Autowired
+	private EmployeeRoleWriter roleWriter;
+
+	@Autowired
+	private EmployeeRepository repository;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private ApplicationEventPublisher events;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	private double count(String name) {
+		return registry.get(name).counter().count();
+	}
+
+	@Test
+	void updatesOfTheSameEmployeeAreCoalescedIntoOneWrite() throws Exception {
+		double received = count("payroll.writes.coalesce.received");
+		double written = count("payroll.writes.coalesce.written");
+
+		CompletableFuture<EmployeeRoleWriter.Result> first = roleWriter.update(1L, "ring-bearer");
+		CompletableFuture<EmployeeRoleWriter.Result> second = roleWriter.update(1L, "ex-burglar");
+		assertThat(first).isNotDone();
+
+		CompletableFuture<EmployeeRoleWriter.Result> other = roleWriter.update(2L, "ring-bearer");
+		assertThat(second.get(10, TimeUnit.SECONDS)).isEqualTo(EmployeeRoleWriter.Result.WRITTEN);
+		assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo(EmployeeRoleWriter.Result.WRITTEN);
+		assertThat(other.get(10, TimeUnit.SECONDS)).isEqualTo(EmployeeRoleWriter.Result.WRITTEN);
+
+		assertThat(repository.findById(1L)).get().extracting(Employee::getRole).isEqualTo("ex-burglar");
+		assertThat(repository.findById(2L)).get().extracting(Employee::getRole).isEqualTo("ring-bearer");
+		assertThat(count("payroll.writes.coalesce.received")).isEqualTo(received + 3);
+		assertThat(count("payroll.writes.coalesce.written")).isEqualTo(written + 2);
+	}
+
+	@Test
+	void aWholeEmployeeWriteSupersedesTheBufferedRole() throws Exception {
+		CompletableFuture<EmployeeRoleWriter.Result> buffered = roleWriter.update(1L, "ring-finder");
+		assertThat(buffered).isNotDone();
+
+		assertThat(roleWriter.replace(1L, () -> "replaced")).isEqualTo("replaced");
+		assertThat(buffered.get(10, TimeUnit.SECONDS)).isEqualTo(EmployeeRoleWriter.Result.SUPERSEDED);
+	}
+
+	@Test
+	void updatesAfterShutdownAreWrittenRightAway() throws Exception {
+		EmployeeRoleWriter closed = new EmployeeRoleWriter(repository, transactionManager, events, cacheManager,
+				new SimpleMeterRegistry(), true, 3600000, 1000, EmployeeRoleWriter.Ack.FLUSHED);
+		closed.destroy();
+
+		assertThat(closed.update(2L, "ring-bearer").get(10, TimeUnit.SECONDS)).isEqualTo(EmployeeRoleWriter.Result.WRITTEN);
+		assertThat(repository.findById(2L)).get().extracting(Employee::getRole).isEqualTo("ring-bearer");
+	}
+}
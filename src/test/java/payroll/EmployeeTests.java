@@ -0,0 +1,45 @@
+package payroll;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EmployeeTests {
+
+	@Test
+	void nameIsSplitAtTheFirstWord() {
+		Employee employee = new Employee();
+
+		employee.setName("  Ludwig   van Beethoven ");
+		assertThat(employee.getFirstName()).isEqualTo("Ludwig");
+		assertThat(employee.getLastName()).isEqualTo("van Beethoven");
+		assertThat(employee.getName()).isEqualTo("Ludwig van Beethoven");
+
+		employee.setName("Gandalf");
+		assertThat(employee.getFirstName()).isEqualTo("Gandalf");
+		assertThat(employee.getLastName()).isNull();
+		assertThat(employee.getName()).isEqualTo("Gandalf");
+	}
+
+	@Test
+	void composedNameFollowsTheNameFields() {
+		Employee employee = new Employee("Bilbo", "Baggins", "burglar");
+		String name = employee.getName();
+		assertThat(employee.getName()).isSameAs(name);
+
+		employee.setName("Bilbo Baggins");
+		assertThat(employee.getName()).isSameAs(name);
+
+		employee.setLastName("Underhill");
+		assertThat(employee.getName()).isEqualTo("Bilbo Underhill");
+	}
+
+	@Test
+	void hashCodeIsUnchanged() {
+		Employee employee = new Employee("Frodo", "Baggins", "thief");
+		employee.setId(2L);
+		assertThat(employee.hashCode()).isEqualTo(Objects.hash(2L, "Frodo", "Baggins", "thief"));
+	}
+}
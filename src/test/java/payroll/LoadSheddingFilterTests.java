@@ -0,0 +1,67 @@
+package payroll;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.RequestPostProcessor;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// bursts of 3 that practically never refill, and one expensive request at a time
+@SpringBootTest(classes = PayrollApplication.class, properties = {
+		"spring.datasource.url=jdbc:h2:mem:payroll-limits-test;DB_CLOSE_DELAY=-1",
+		"payroll.limits.enabled=true",
+		"payroll.limits.rate.per-second=0.01",
+		"payroll.limits.rate.burst=3",
+		"payroll.limits.expensive.max-concurrent=1"})
+@AutoConfigureMockMvc
+class LoadSheddingFilterTests {
+
+	@Autowired
+	private MockMvc mvc;
+
+	// every test is its own client, with a bucket of its own
+	private static RequestPostProcessor from(String address) {
+		return request -> {
+			request.setRemoteAddr(address);
+			return request;
+		};
+	}
+
+	@Test
+	void clientsBeyondTheirBurstGetTooManyRequests() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			mvc.perform(get("/employees/1").with(from("10.0.0.1"))).andExpect(status().isOk());
+		}
+		mvc.perform(get("/employees/1").with(from("10.0.0.1")))
+				.andExpect(status().isTooManyRequests())
+				.andExpect(header().exists(HttpHeaders.RETRY_AFTER));
+
+		// other clients and the actuator endpoints are not affected
+		mvc.perform(get("/employees/1").with(from("10.0.0.2"))).andExpect(status().isOk());
+		mvc.perform(get("/actuator/health").with(from("10.0.0.1"))).andExpect(status().isOk());
+	}
+
+	@Test
+	void expensiveRequestsAreCappedUntilTheAsyncOneCompletes() throws Exception {
+		MvcResult export = mvc.perform(get("/employees/export").with(from("10.0.1.1")))
+				.andExpect(request().asyncStarted())
+				.andReturn();
+
+		mvc.perform(get("/employees").with(from("10.0.1.2")))
+				.andExpect(status().isServiceUnavailable())
+				.andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"));
+
+		// completing the export gives its permit back
+		mvc.perform(asyncDispatch(export)).andExpect(status().isOk());
+		mvc.perform(get("/employees").with(from("10.0.1.2"))).andExpect(status().isOk());
+	}
+}
@@ -0,0 +1,54 @@
+package payroll;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// the "replica" is a second pool on the same in-memory database, which is enough to see where connections come from
+@SpringBootTest(classes = PayrollApplication.class, properties = {
+		"spring.datasource.url=jdbc:h2:mem:payroll-replica-test;DB_CLOSE_DELAY=-1",
+		"payroll.datasource.replica.jdbc-url=jdbc:h2:mem:payroll-replica-test;DB_CLOSE_DELAY=-1"})
+@AutoConfigureMockMvc
+class ReadReplicaRoutingTests {
+
+	@Autowired
+	private MockMvc mvc;
+
+	@Autowired
+	private MeterRegistry registry;
+
+	// connections handed out (and given back) by the pool so far
+	private long usage(String pool) {
+		return registry.find("hikaricp.connections.usage").tag("pool", pool).timers().stream()
+				.mapToLong(timer -> timer.count()).sum();
+	}
+
+	@Test
+	void readsUseTheReplicaAndWritesThePrimary() throws Exception {
+		long primary = usage("primary");
+		long replica = usage("replica");
+
+		mvc.perform(get("/employees")).andExpect(status().isOk());
+		mvc.perform(get("/employees").param("size", "1")).andExpect(status().isOk());
+
+		assertThat(usage("replica")).isEqualTo(replica + 2);
+		assertThat(usage("primary")).isEqualTo(primary);
+
+		mvc.perform(put("/employees/1")
+				.contentType(MediaType.APPLICATION_JSON)
+				.content("{\"name\":\"Bilbo Baggins\",\"role\":\"burglar\"}"))
+				.andExpect(status().isCreated());
+
+		assertThat(usage("primary")).isEqualTo(primary + 1);
+		assertThat(usage("replica")).isEqualTo(replica + 2);
+	}
+}
@@ -0,0 +1,52 @@
+package payroll;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenBucketRateLimiterTests {
+
+	private final AtomicLong now = new AtomicLong();
+
+	// 10 requests per second, bursts of 3
+	private final TokenBucketRateLimiter limiter = new TokenBucketRateLimiter(10, 3, 100, now::get);
+
+	@Test
+	void burstIsAdmittedThenTheRateApplies() {
+		assertThat(limiter.tryAcquire("a")).isZero();
+		assertThat(limiter.tryAcquire("a")).isZero();
+		assertThat(limiter.tryAcquire("a")).isZero();
+
+		long wait = limiter.tryAcquire("a");
+		assertThat(wait).isEqualTo(TimeUnit.MILLISECONDS.toNanos(100));
+
+		now.addAndGet(wait);
+		assertThat(limiter.tryAcquire("a")).isZero();
+		assertThat(limiter.tryAcquire("a")).isPositive();
+	}
+
+	@Test
+	void clientsHaveTheirOwnBuckets() {
+		for (int i = 0; i < 3; i++) {
+			limiter.tryAcquire("a");
+		}
+		assertThat(limiter.tryAcquire("a")).isPositive();
+		assertThat(limiter.tryAcquire("b")).isZero();
+	}
+
+	@Test
+	void idleClientsGetTheirBurstBack() {
+		for (int i = 0; i < 3; i++) {
+			limiter.tryAcquire("a");
+		}
+		now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+
+		assertThat(limiter.tryAcquire("a")).isZero();
+		assertThat(limiter.tryAcquire("a")).isZero();
+		assertThat(limiter.tryAcquire("a")).isZero();
+		assertThat(limiter.tryAcquire("a")).isPositive();
+	}
+}